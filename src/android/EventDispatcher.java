@@ -0,0 +1,421 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package com.commontime.plugin.notification;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import com.commontime.plugin.notification.notification.Config;
+import com.commontime.plugin.notification.notification.Metrics;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Delivers the events to JS in batches. Events fired within the flush
+ * interval, by default about one UI frame, get coalesced into a single
+ * delivery. A full batch gets flushed at once. The events get streamed
+ * over the callback the JS side has subscribed with, which keeps the UI
+ * thread out of the way. Without a subscription they get evaluated as
+ * JS code by the web view instead. Events fired before the JS side is
+ * ready wait for it in a bounded buffer, optionally backed by a journal
+ * file to survive process death. Once ready, the buffer gets drained in
+ * batches. The journal keeps the events until they have been handed
+ * over, so that an event might be delivered twice after process death
+ * but never gets lost.
+ */
+final class EventDispatcher {
+
+    // JS function which fires a list of events
+    private static final String JS_FIRE_EVENTS =
+            "cordova.plugins.notification.core.fireEvents";
+
+    // Events to flush, each as list of the event name and its arguments
+    private final LinkedList<JSONArray> pending = new LinkedList<JSONArray>();
+
+    // Runs the flushes on a background thread
+    private final Handler handler;
+
+    // Runs the JS evaluations of the fallback on the UI thread
+    private final Handler uiHandler = new Handler(Looper.getMainLooper());
+
+    // Application context to read the settings, null until ready
+    private Context context;
+
+    // Journal file of the buffered events, null if not opened yet
+    private EventJournal journal;
+
+    // Callback the JS side has subscribed with, null if none
+    private CallbackContext subscriber;
+
+    // Web view to evaluate the events in, null while not ready
+    private CordovaWebView webView;
+
+    // If a flush has been scheduled
+    private boolean scheduled = false;
+
+    // If the scheduled flush runs without delay
+    private boolean immediate = false;
+
+    // Flushes the next batch
+    private final Runnable flusher = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Constructor
+     */
+    EventDispatcher() {
+        HandlerThread thread = new HandlerThread("NotificationEvents");
+
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Stream the events over the callback, including the ones fired
+     * before. Replaces a former subscription, e.g. after a page reload.
+     *
+     * @param context
+     *      Application context
+     * @param callback
+     *      The callback context of the subscribe action
+     */
+    synchronized void subscribe(Context context, CallbackContext callback) {
+        PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
+
+        result.setKeepCallback(true);
+        callback.sendPluginResult(result);
+
+        this.context = context.getApplicationContext();
+        subscriber   = callback;
+
+        drain();
+    }
+
+    /**
+     * Start evaluating the events in the web view unless subscribed,
+     * including the ones fired before.
+     *
+     * @param webView
+     *      The web view of the app
+     */
+    synchronized void attach(CordovaWebView webView) {
+        this.webView = webView;
+        this.context = webView.getContext().getApplicationContext();
+
+        drain();
+    }
+
+    /**
+     * Hand the buffered events including the ones of the journal over to
+     * the JS side, which has just become ready. The journal gets shortened
+     * by each flush once its events have been handed over. Without the
+     * journal setting a journal left behind by a former setting gets
+     * removed unread.
+     */
+    private void drain() {
+
+        if (Config.getInstance(context).isEventJournaled()) {
+            openJournal();
+        } else if (journal == null) {
+            new EventJournal(context).clear();
+        }
+
+        if (!pending.isEmpty()) {
+            schedule(0);
+        }
+    }
+
+    /**
+     * Stop delivering the events, as the page is gone. Further events
+     * wait for the next subscribe or attach.
+     */
+    synchronized void detach() {
+        webView    = null;
+        subscriber = null;
+        handler.removeCallbacks(flusher);
+        scheduled = false;
+        immediate = false;
+    }
+
+    /**
+     * Queue the event for the next flush. While the JS side is not ready,
+     * the event gets buffered and optionally written to the journal.
+     *
+     * @param context
+     *      Application context, may be null if known already
+     * @param args
+     *      The event name followed by its arguments
+     */
+    synchronized void dispatch(Context context, JSONArray args) {
+        Metrics.eventFired();
+
+        if (this.context == null && context != null) {
+            this.context = context.getApplicationContext();
+        }
+
+        if (this.context == null) {
+            enqueue(args, Config.DEFAULT_EVENT_QUEUE_SIZE, false);
+            return;
+        }
+
+        Config config = Config.getInstance(this.context);
+        boolean ready = subscriber != null || webView != null;
+
+        if (!ready && config.isEventJournaled()) {
+            openJournal();
+        }
+
+        enqueue(args, config.getEventQueueSize(), config.isEventCollapsing());
+
+        if (!ready) {
+            if (config.isEventJournaled()) {
+                journal(args, config);
+            }
+            return;
+        }
+
+        if (pending.size() >= config.getEventBatchSize()) {
+            schedule(0);
+        } else if (!scheduled) {
+            schedule(config.getEventFlushInterval());
+        }
+    }
+
+    /**
+     * Add the event to the buffer. If the buffer is full, the oldest event
+     * gets dropped, or with the collapse policy the oldest one of the same
+     * type and notification if any.
+     *
+     * @param args
+     *      The event name followed by its arguments
+     * @param size
+     *      Max number of buffered events
+     * @param collapsing
+     *      If the collapse policy applies
+     */
+    private void enqueue(JSONArray args, int size, boolean collapsing) {
+
+        if (pending.size() >= size) {
+            if (!collapsing || !collapse(getKey(args))) {
+                pending.removeFirst();
+            }
+            Metrics.eventDropped();
+        }
+
+        pending.add(args);
+    }
+
+    /**
+     * Remove the oldest buffered event with the key.
+     *
+     * @param key
+     *      The event type and notification ID
+     *
+     * @return
+     *      false if no event has the key
+     */
+    private boolean collapse(String key) {
+        Iterator<JSONArray> it = pending.iterator();
+
+        while (it.hasNext()) {
+            if (key.equals(getKey(it.next()))) {
+                it.remove();
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Key of the event made of its type and the notification ID.
+     *
+     * @param args
+     *      The event name followed by its arguments
+     */
+    private static String getKey(JSONArray args) {
+        JSONObject notification = args.optJSONObject(1);
+        String key = args.optString(0);
+
+        return notification != null ? key + ":" + notification.optInt("id") : key;
+    }
+
+    /**
+     * Write the buffered event to the journal. Once the journal holds
+     * far more lines than the buffer because of dropped events, it gets
+     * compacted.
+     *
+     * @param args
+     *      The event name followed by its arguments
+     * @param config
+     *      The plugin settings
+     */
+    private void journal(JSONArray args, Config config) {
+
+        if (journal.size() >= 2 * config.getEventQueueSize()) {
+            journal.rewrite(pending);
+        } else {
+            journal.append(args);
+        }
+    }
+
+    /**
+     * Open the journal on first use and buffer the events which have been
+     * written to it by a former process.
+     */
+    private void openJournal() {
+
+        if (journal != null)
+            return;
+
+        Config config = Config.getInstance(context);
+        journal = new EventJournal(context);
+
+        List<JSONArray> events = journal.load();
+
+        if (events.isEmpty())
+            return;
+
+        pending.addAll(0, events);
+
+        while (pending.size() > config.getEventQueueSize()) {
+            pending.removeFirst();
+            Metrics.eventDropped();
+        }
+
+        journal.rewrite(pending);
+    }
+
+    /**
+     * Shorten the journal to the events which have not been handed over
+     * yet. Called after each flush, does nothing once the journal has been
+     * drained since events of a ready JS side don't get journaled.
+     */
+    private synchronized void trimJournal() {
+
+        if (journal == null || journal.size() == 0)
+            return;
+
+        if (pending.isEmpty()) {
+            journal.clear();
+        } else {
+            journal.rewrite(pending);
+        }
+    }
+
+    /**
+     * Schedule the next flush unless one with the same or a shorter delay
+     * is scheduled already.
+     *
+     * @param delay
+     *      Delay in milliseconds
+     */
+    private void schedule(long delay) {
+
+        if (immediate || (scheduled && delay > 0))
+            return;
+
+        handler.removeCallbacks(flusher);
+        handler.postDelayed(flusher, delay);
+
+        scheduled = true;
+        immediate = delay == 0;
+    }
+
+    /**
+     * Deliver the next batch of events with a single message over the
+     * callback, or with a single JS evaluation as fallback.
+     */
+    private void flush() {
+        CallbackContext callback;
+        final CordovaWebView view;
+        JSONArray batch = new JSONArray();
+
+        synchronized (this) {
+            scheduled = false;
+            immediate = false;
+            callback  = subscriber;
+            view      = webView;
+
+            if ((callback == null && view == null) || pending.isEmpty())
+                return;
+
+            List<JSONArray> events = pending.subList(0, Math.min(pending.size(),
+                    Config.getInstance(context).getEventBatchSize()));
+
+            for (JSONArray event : events) {
+                batch.put(event);
+            }
+
+            events.clear();
+
+            if (!pending.isEmpty()) {
+                schedule(0);
+            }
+        }
+
+        if (callback != null) {
+            PluginResult result = new PluginResult(PluginResult.Status.OK, batch);
+
+            result.setKeepCallback(true);
+            callback.sendPluginResult(result);
+            trimJournal();
+        } else {
+            final String js = JS_FIRE_EVENTS + "(" + batch.toString() + ")";
+
+            uiHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    view.loadUrl("javascript:" + js);
+
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            trimJournal();
+                        }
+                    });
+                }
+            });
+
+            Metrics.eventsEvaluated();
+        }
+
+        Metrics.eventsFlushed(batch.length());
+    }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package com.commontime.plugin.notification;
+
+import android.content.Context;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Small append-only file holding the events which are waiting for the JS
+ * side, one JSON array per line. Keeps them across process death, e.g.
+ * if the app gets started by a burst of triggers and killed before the
+ * web view has loaded.
+ */
+final class EventJournal {
+
+    // Name of the journal file within the files dir
+    private static final String FILE_NAME = "notification-events.log";
+
+    // Name of the file a rewrite goes to before it replaces the journal
+    private static final String TMP_NAME = FILE_NAME + ".tmp";
+
+    // Encoding of the journal file
+    private static final String CHARSET = "UTF-8";
+
+    // The journal file
+    private final File file;
+
+    // The file a rewrite goes to before it replaces the journal
+    private final File tmp;
+
+    // Number of lines written since the file has been created
+    private int lines = 0;
+
+    /**
+     * Constructor
+     *
+     * @param context
+     *      Application context
+     */
+    EventJournal(Context context) {
+        this.file = new File(context.getFilesDir(), FILE_NAME);
+        this.tmp  = new File(context.getFilesDir(), TMP_NAME);
+    }
+
+    /**
+     * Number of lines written since the file has been created.
+     */
+    int size() {
+        return lines;
+    }
+
+    /**
+     * Read the events of the journal. Lines which cannot be parsed, e.g.
+     * the last one after a crash while writing, are skipped.
+     */
+    List<JSONArray> load() {
+        List<JSONArray> events = new ArrayList<JSONArray>();
+
+        if (!file.exists())
+            return events;
+
+        BufferedReader reader = null;
+
+        try {
+            reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), CHARSET));
+
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                try {
+                    events.add(new JSONArray(line));
+                } catch (JSONException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            close(reader);
+        }
+
+        lines = events.size();
+
+        return events;
+    }
+
+    /**
+     * Append the event to the journal.
+     *
+     * @param event
+     *      The event name followed by its arguments
+     */
+    void append(JSONArray event) {
+        write(file, event.toString() + "\n", true);
+        lines++;
+    }
+
+    /**
+     * Replace the content of the journal with the events. They get written
+     * to a temp file first which then replaces the journal, so that the
+     * journal survives a process death while writing.
+     *
+     * @param events
+     *      The events waiting for the JS side
+     */
+    void rewrite(List<JSONArray> events) {
+        StringBuilder content = new StringBuilder();
+
+        for (JSONArray event : events) {
+            content.append(event.toString()).append('\n');
+        }
+
+        if (!write(tmp, content.toString(), false))
+            return;
+
+        if (!tmp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            return;
+        }
+
+        lines = events.size();
+    }
+
+    /**
+     * Remove the journal file.
+     */
+    void clear() {
+
+        if (file.exists() && !file.delete()) {
+            write(file, "", false);
+        }
+
+        lines = 0;
+    }
+
+    /**
+     * Write the content to the file.
+     *
+     * @param target
+     *      The file to write to
+     * @param content
+     *      The lines to write
+     * @param append
+     *      If the lines get appended or replace the content
+     *
+     * @return
+     *      false if the content could not be written
+     */
+    private static boolean write(File target, String content, boolean append) {
+        OutputStream out = null;
+
+        try {
+            out = new FileOutputStream(target, append);
+            out.write(content.getBytes(CHARSET));
+            out.close();
+            out = null;
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            close(out);
+        }
+    }
+
+    /**
+     * Close the stream and ignore any error.
+     *
+     * @param stream
+     *      The stream or null
+     */
+    private static void close(Closeable stream) {
+
+        if (stream == null)
+            return;
+
+        try {
+            stream.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
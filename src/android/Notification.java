@@ -23,7 +23,7 @@
 
 package com.commontime.plugin.notification;
 
-import android.app.Activity;
+import android.content.Context;
 
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaInterface;
@@ -34,11 +34,15 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.commontime.plugin.notification.notification.AbstractRestoreReceiver;
+import com.commontime.plugin.notification.notification.Builder;
+import com.commontime.plugin.notification.notification.Config;
 import com.commontime.plugin.notification.notification.Manager;
+import com.commontime.plugin.notification.notification.Metrics;
+import com.commontime.plugin.notification.notification.NotificationRecord;
 import com.commontime.plugin.notification.notification.NotificationWrapper;
 
 /**
@@ -60,8 +64,8 @@ public class Notification extends CordovaPlugin {
     // To inform the user about the state of the app in callbacks
     protected static Boolean isInBackground = true;
 
-    // Queues all events before deviceready
-    private static ArrayList<String> eventQueue = new ArrayList<String>();
+    // Delivers the events to JS in batches, holds them until deviceready
+    private static final EventDispatcher events = new EventDispatcher();
 
     /**
      * Called after plugin construction and fields have been initialized.
@@ -73,6 +77,9 @@ public class Notification extends CordovaPlugin {
     @Override
     public void initialize(CordovaInterface cordova, CordovaWebView webView) {
         Notification.webView = super.webView;
+
+        AbstractRestoreReceiver.resumeIfPending(
+                cordova.getActivity(), RestoreReceiver.class);
     }
 
     /**
@@ -106,6 +113,17 @@ public class Notification extends CordovaPlugin {
         deviceready = false;
         isInBackground = true;
         Notification.webView = null;
+        events.detach();
+    }
+
+    /**
+     * Called when the web view does a top-level navigation or refreshes.
+     * The subscription of the former page is gone.
+     */
+    @Override
+    public void onReset() {
+        deviceready = false;
+        events.detach();
     }
 
     /**
@@ -129,17 +147,23 @@ public class Notification extends CordovaPlugin {
 
         NotificationWrapper.setDefaultTriggerReceiver(TriggerReceiver.class);
 
+        if (action.equals("subscribe")) {
+            events.subscribe(cordova.getActivity(), command);
+            return true;
+        }
+
+        Builder.setDefaultClearReceiver(ClearReceiver.class);
+        Builder.setDefaultClickActivity(ClickActivity.class);
+        Builder.setDefaultActionClickActivity(ActionClickActivity.class);
+
         cordova.getThreadPool().execute(new Runnable() {
             public void run() {
                 if (action.equals("schedule")) {
-                    schedule(args);
-                    command.success();
+                    schedule(args, command);
                 } else if (action.equals("update")) {
-                    update(args);
-                    command.success();
+                    update(args, command);
                 } else if (action.equals("cancel")) {
-                    cancel(args);
-                    command.success();
+                    cancel(args, command);
                 } else if (action.equals("cancelAll")) {
                     cancelAll();
                     command.success();
@@ -173,6 +197,28 @@ public class Notification extends CordovaPlugin {
                     getScheduled(args, command);
                 } else if (action.equals("getTriggered")) {
                     getTriggered(args, command);
+                } else if (action.equals("getAllPage")) {
+                    getPage(args.optJSONObject(0), NotificationWrapper.Type.ALL, command);
+                } else if (action.equals("getScheduledPage")) {
+                    getPage(args.optJSONObject(0), NotificationWrapper.Type.SCHEDULED, command);
+                } else if (action.equals("getTriggeredPage")) {
+                    getPage(args.optJSONObject(0), NotificationWrapper.Type.TRIGGERED, command);
+                } else if (action.equals("query")) {
+                    query(args.optJSONObject(0), command);
+                } else if (action.equals("configure")) {
+                    configure(args.optJSONObject(0), command);
+                } else if (action.equals("getMetrics")) {
+                    getMetrics(command);
+                } else if (action.equals("createChannel")) {
+                    createChannel(args.optJSONObject(0), command);
+                } else if (action.equals("registerCategories")) {
+                    registerCategories(args.optJSONArray(0), command);
+                } else if (action.equals("getRegisteredCategories")) {
+                    getRegisteredCategories(command);
+                } else if (action.equals("removeRegisteredCategories")) {
+                    removeRegisteredCategories(args, command);
+                } else if (action.equals("clearRegisteredCategories")) {
+                    clearRegisteredCategories(command);
                 } else if (action.equals("deviceready")) {
                     deviceready();
                 }
@@ -183,51 +229,77 @@ public class Notification extends CordovaPlugin {
     }
 
     /**
-     * Schedule multiple local notifications.
+     * Schedule multiple local notifications. All notifications are written
+     * at once, the callback receives the number of scheduled notifications.
      *
      * @param notifications Properties for each local notification
+     * @param command       The callback context used when calling back into JavaScript.
      */
-    private void schedule(JSONArray notifications) {
-        for (int i = 0; i < notifications.length(); i++) {
-            JSONObject options = notifications.optJSONObject(i);
+    private void schedule(JSONArray notifications, CallbackContext command) {
+        List<NotificationWrapper> list;
 
-            NotificationWrapper notification = getNotificationMgr().schedule(options, TriggerReceiver.class);
+        try {
+            list = getNotificationMgr().schedule(
+                    toObjectList(notifications), TriggerReceiver.class);
+        } catch (RuntimeException e) {
+            command.error(e.getMessage());
+            return;
+        }
 
+        for (NotificationWrapper notification : list) {
             fireEvent("schedule", notification);
         }
+
+        command.success(list.size());
     }
 
     /**
-     * Update multiple local notifications.
+     * Update multiple local notifications. All updates are written at once,
+     * the callback receives the number of updated notifications.
      *
      * @param updates NotificationWrapper properties including their IDs
+     * @param command The callback context used when calling back into JavaScript.
      */
-    private void update(JSONArray updates) {
-        for (int i = 0; i < updates.length(); i++) {
-            JSONObject update = updates.optJSONObject(i);
-            int id = update.optInt("id", 0);
+    private void update(JSONArray updates, CallbackContext command) {
+        List<NotificationWrapper> list;
 
-            NotificationWrapper notification = getNotificationMgr().update(id, update, TriggerReceiver.class);
+        try {
+            list = getNotificationMgr().update(
+                    toObjectList(updates), TriggerReceiver.class);
+        } catch (RuntimeException e) {
+            command.error(e.getMessage());
+            return;
+        }
 
+        for (NotificationWrapper notification : list) {
             fireEvent("update", notification);
         }
+
+        command.success(list.size());
     }
 
     /**
-     * Cancel multiple local notifications.
+     * Cancel multiple local notifications. All notifications are removed at
+     * once, the callback receives the number of canceled notifications.
      *
-     * @param ids Set of local notification IDs
+     * @param ids     Set of local notification IDs
+     * @param command The callback context used when calling back into JavaScript.
      */
-    private void cancel(JSONArray ids) {
-        for (int i = 0; i < ids.length(); i++) {
-            int id = ids.optInt(i, 0);
+    private void cancel(JSONArray ids, CallbackContext command) {
+        List<NotificationRecord> list;
 
-            NotificationWrapper notification = getNotificationMgr().cancel(id);
+        try {
+            list = getNotificationMgr().cancel(toList(ids));
+        } catch (RuntimeException e) {
+            command.error(e.getMessage());
+            return;
+        }
 
-            if (notification != null) {
-                fireEvent("cancel", notification);
-            }
+        for (NotificationRecord record : list) {
+            fireEvent("cancel", record);
         }
+
+        command.success(list.size());
     }
 
     /**
@@ -352,7 +424,8 @@ public class Notification extends CordovaPlugin {
      * @param command The callback context used when calling back into JavaScript.
      */
     private void getSingle(JSONArray ids, CallbackContext command) {
-        getOptions(ids.optString(0), NotificationWrapper.Type.ALL, command);
+        getOptions(ids.optString(0), NotificationWrapper.Type.ALL,
+                toFields(ids), command);
     }
 
     /**
@@ -362,7 +435,8 @@ public class Notification extends CordovaPlugin {
      * @param command The callback context used when calling back into JavaScript.
      */
     private void getSingleScheduled(JSONArray ids, CallbackContext command) {
-        getOptions(ids.optString(0), NotificationWrapper.Type.SCHEDULED, command);
+        getOptions(ids.optString(0), NotificationWrapper.Type.SCHEDULED,
+                toFields(ids), command);
     }
 
     /**
@@ -372,7 +446,8 @@ public class Notification extends CordovaPlugin {
      * @param command The callback context used when calling back into JavaScript.
      */
     private void getSingleTriggered(JSONArray ids, CallbackContext command) {
-        getOptions(ids.optString(0), NotificationWrapper.Type.TRIGGERED, command);
+        getOptions(ids.optString(0), NotificationWrapper.Type.TRIGGERED,
+                toFields(ids), command);
     }
 
     /**
@@ -410,15 +485,16 @@ public class Notification extends CordovaPlugin {
      *
      * @param id      Set of local notification IDs
      * @param type    The local notification life cycle type
+     * @param fields  The fields to return or null for all
      * @param command The callback context used when calling back into JavaScript.
      */
     private void getOptions(String id, NotificationWrapper.Type type,
-                            CallbackContext command) {
+                            List<String> fields, CallbackContext command) {
 
         JSONArray ids = new JSONArray().put(id);
 
-        JSONObject options =
-                getNotificationMgr().getOptionsBy(type, toList(ids)).get(0);
+        JSONObject options = getNotificationMgr()
+                .getOptionsBy(type, toList(ids), fields).get(0);
 
         command.success(options);
     }
@@ -426,24 +502,160 @@ public class Notification extends CordovaPlugin {
     /**
      * Set of options from local notifications.
      *
-     * @param ids     Set of local notification IDs
+     * @param ids     Set of local notification IDs, optionally followed by
+     *                the query with the fields to return
      * @param type    The local notification life cycle type
      * @param command The callback context used when calling back into JavaScript.
      */
     private void getOptions(JSONArray ids, NotificationWrapper.Type type,
                             CallbackContext command) {
 
+        List<Integer> list  = toList(ids);
+        List<String> fields = toFields(ids);
         List<JSONObject> options;
 
-        if (ids.length() == 0) {
-            options = getNotificationMgr().getOptionsByType(type);
+        if (list.isEmpty()) {
+            options = getNotificationMgr().getOptionsByType(type, fields);
         } else {
-            options = getNotificationMgr().getOptionsBy(type, toList(ids));
+            options = getNotificationMgr().getOptionsBy(type, list, fields);
         }
 
         command.success(new JSONArray(options));
     }
 
+    /**
+     * One page of options from local notifications.
+     *
+     * @param opts    Page size, order and the cursor of the former page
+     * @param type    The local notification life cycle type
+     * @param command The callback context used when calling back into JavaScript.
+     */
+    private void getPage(JSONObject opts, NotificationWrapper.Type type,
+                         CallbackContext command) {
+
+        if (opts == null) {
+            opts = new JSONObject();
+        }
+
+        String cursor = opts.isNull("cursor") ? null : opts.optString("cursor");
+
+        JSONArray fields = opts.optJSONArray("fields");
+
+        JSONObject page = getNotificationMgr().getOptionsPage(type,
+                opts.optString("order", "id"), cursor, opts.optInt("size", 0),
+                fields != null ? toStringList(fields) : null);
+
+        if (page != null) {
+            command.success(page);
+        } else {
+            command.error("Invalid cursor");
+        }
+    }
+
+    /**
+     * Options from local notifications which match the filter.
+     *
+     * @param filter  The filter expression like type, at range and fields
+     * @param command The callback context used when calling back into JavaScript.
+     */
+    private void query(JSONObject filter, CallbackContext command) {
+        List<JSONObject> options = null;
+
+        if (filter != null) {
+            options = getNotificationMgr().query(filter);
+        }
+
+        if (options != null) {
+            command.success(new JSONArray(options));
+        } else {
+            command.error("Invalid filter");
+        }
+    }
+
+    /**
+     * Change the plugin settings like the scheduler mode.
+     *
+     * @param settings Settings to change
+     * @param command  The callback context used when calling back into JavaScript.
+     */
+    private void configure(JSONObject settings, CallbackContext command) {
+
+        if (settings != null) {
+            getNotificationMgr().configure(settings, TriggerReceiver.class);
+        }
+
+        command.success(Config.getInstance(cordova.getActivity()).toJSON());
+    }
+
+    /**
+     * Create a notification channel with the given settings.
+     *
+     * @param channel  Channel settings like id, name and importance
+     * @param command  The callback context used when calling back into JavaScript.
+     */
+    private void createChannel(JSONObject channel, CallbackContext command) {
+
+        if (channel != null && getNotificationMgr().createChannel(channel)) {
+            command.success();
+        } else {
+            command.error("Invalid channel");
+        }
+    }
+
+    /**
+     * Register categories which notifications can reference by identifier.
+     *
+     * @param categories Category definitions with identifier and actions
+     * @param command    The callback context used when calling back into JavaScript.
+     */
+    private void registerCategories(JSONArray categories, CallbackContext command) {
+
+        if (categories != null) {
+            getNotificationMgr().registerCategories(categories);
+        }
+
+        command.success();
+    }
+
+    /**
+     * Definitions of all registered categories.
+     *
+     * @param command The callback context used when calling back into JavaScript.
+     */
+    private void getRegisteredCategories(CallbackContext command) {
+        command.success(getNotificationMgr().getRegisteredCategories());
+    }
+
+    /**
+     * Unregister the categories.
+     *
+     * @param identifiers The category identifiers
+     * @param command     The callback context used when calling back into JavaScript.
+     */
+    private void removeRegisteredCategories(JSONArray identifiers, CallbackContext command) {
+        getNotificationMgr().removeRegisteredCategories(toStringList(identifiers));
+        command.success();
+    }
+
+    /**
+     * Unregister all categories.
+     *
+     * @param command The callback context used when calling back into JavaScript.
+     */
+    private void clearRegisteredCategories(CallbackContext command) {
+        getNotificationMgr().clearRegisteredCategories();
+        command.success();
+    }
+
+    /**
+     * Counters like the number of registered alarms and wakeups.
+     *
+     * @param command The callback context used when calling back into JavaScript.
+     */
+    private void getMetrics(CallbackContext command) {
+        command.success(Metrics.toJSON());
+    }
+
     /**
      * Call all pending callbacks after the deviceready event has been fired.
      */
@@ -451,11 +663,9 @@ public class Notification extends CordovaPlugin {
         isInBackground = false;
         deviceready = true;
 
-        for (String js : eventQueue) {
-            sendJavascript(js);
+        if (webView != null) {
+            events.attach(webView);
         }
-
-        eventQueue.clear();
     }
 
     /**
@@ -465,7 +675,22 @@ public class Notification extends CordovaPlugin {
      *      The event name
      */
     private void fireEvent (String event) {
-        fireEvent(event, null);
+        fireEvent(event, (NotificationWrapper) null);
+    }
+
+    /**
+     * Fire given event on JS side for a notification which has not been
+     * built. Does inform all event listeners.
+     *
+     * @param event
+     *      The event name
+     * @param record
+     *      The record to pass the id and properties.
+     */
+    private void fireEvent (String event, NotificationRecord record) {
+        JSONArray args = new JSONArray().put(event).put(record.toJSON());
+
+        events.dispatch(cordova.getActivity(), args.put(getApplicationState()));
     }
 
     /**
@@ -477,56 +702,88 @@ public class Notification extends CordovaPlugin {
      *      Optional notification to pass the id and properties.
      */
     public static void fireEvent (String event, NotificationWrapper notification) {
-        String state = getApplicationState();
-        String params = "\"" + state + "\"";
+        JSONArray args = new JSONArray().put(event);
+        CordovaWebView view = webView;
+        Context context = null;
 
         if (notification != null) {
-            params = notification.toString() + "," + params;
+            args.put(notification.toJSON());
+            context = notification.getContext();
+        } else if (view != null) {
+            context = view.getContext();
         }
 
-        String js = "cordova.plugins.notification.core.fireEvent(" +
-                "\"" + event + "\"," + params + ")";
-
-        sendJavascript(js);
+        events.dispatch(context, args.put(getApplicationState()));
     }
 
     /**
-     * Use this instead of deprecated sendJavascript
+     * Convert JSON array of integers to List. Skips the query passed
+     * along with the IDs.
      *
-     * @param js
-     *       JS code snippet as string
+     * @param ary
+     *      Array of integers
      */
-    private static synchronized void sendJavascript(final String js) {
+    private List<Integer> toList (JSONArray ary) {
+        ArrayList<Integer> list = new ArrayList<Integer>();
 
-        if (!deviceready) {
-            eventQueue.add(js);
-            return;
+        for (int i = 0; i < ary.length(); i++) {
+            if (ary.opt(i) instanceof JSONObject)
+                continue;
+
+            list.add(ary.optInt(i));
         }
-        Runnable jsLoader = new Runnable() {
-            public void run() {
-                webView.loadUrl("javascript:" + js);
-            }
-        };
-        try {
-            Method post = webView.getClass().getMethod("post",Runnable.class);
-            post.invoke(webView,jsLoader);
-        } catch(Exception e) {
 
-            ((Activity)(webView.getContext())).runOnUiThread(jsLoader);
+        return list;
+    }
+
+    /**
+     * Convert JSON array of strings to List.
+     *
+     * @param ary
+     *      Array of strings
+     */
+    private List<String> toStringList (JSONArray ary) {
+        ArrayList<String> list = new ArrayList<String>();
+
+        for (int i = 0; i < ary.length(); i++) {
+            list.add(ary.optString(i));
         }
+
+        return list;
     }
 
     /**
-     * Convert JSON array of integers to List.
+     * Fields to return if the last argument is a query like
+     * { fields: ['id', 'title'] }.
+     *
+     * @param args
+     *      The arguments of the query action
+     *
+     * @return
+     *      null to return all fields
+     */
+    private List<String> toFields (JSONArray args) {
+        JSONObject query = args.optJSONObject(args.length() - 1);
+        JSONArray fields = query != null ? query.optJSONArray("fields") : null;
+
+        return fields != null ? toStringList(fields) : null;
+    }
+
+    /**
+     * Convert JSON array of objects to List.
      *
      * @param ary
-     *      Array of integers
+     *      Array of objects
      */
-    private List<Integer> toList (JSONArray ary) {
-        ArrayList<Integer> list = new ArrayList<Integer>();
+    private List<JSONObject> toObjectList (JSONArray ary) {
+        ArrayList<JSONObject> list = new ArrayList<JSONObject>();
 
         for (int i = 0; i < ary.length(); i++) {
-            list.add(ary.optInt(i));
+            JSONObject obj = ary.optJSONObject(i);
+
+            if (obj != null) {
+                list.add(obj);
+            }
         }
 
         return list;
@@ -43,7 +43,7 @@ public class RestoreReceiver extends AbstractRestoreReceiver {
     @Override
     public void onRestore (NotificationWrapper notification) {
         if (notification.isScheduled()) {
-            notification.schedule();
+            notification.scheduleAlarm();
         }
     }
 
@@ -41,6 +41,9 @@ abstract public class AbstractActionClickActivity extends Activity {
 
     public static final String ACTION_PARAM = "com.commontime.plugin.notification.extra.ACTION_PARAM";
 
+    // Key name for the action identifier within bundled extras
+    public static final String ACTION_ID = "com.commontime.plugin.notification.extra.ACTION_ID";
+
     /**
      * Called when local notification was clicked to launch the main intent.
      *
@@ -54,12 +57,23 @@ abstract public class AbstractActionClickActivity extends Activity {
         Intent intent   = getIntent();
         Bundle bundle   = intent.getExtras();
         Context context = getApplicationContext();
+        JSONObject dataJson = Options.getExtras(context, intent);
+
+        if (dataJson == null) {
+            finish();
+            return;
+        }
 
         try {
-            JSONObject dataJson = new JSONObject(bundle.getString(Options.EXTRA));
-            JSONObject actionDataJson = new JSONObject(bundle.getString(ActionClickActivity.ACTION_PARAM));
+            String identifier = bundle.getString(ACTION_ID);
+
+            // Intents of former versions carry the action JSON only
+            if (identifier == null) {
+                identifier = new JSONObject(bundle.getString(ACTION_PARAM))
+                        .getString("identifier");
+            }
 
-            dataJson.put("actionResponseIdentifier", actionDataJson.getString("identifier"));
+            dataJson.put("actionResponseIdentifier", identifier);
             dataJson.put("actionResponse", null);
 
             Builder builder =
@@ -26,9 +26,7 @@ package com.commontime.plugin.notification.notification;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.os.Bundle;
 
-import org.json.JSONException;
 import org.json.JSONObject;
 
 /**
@@ -47,16 +45,10 @@ abstract public class AbstractClearReceiver extends BroadcastReceiver {
      */
     @Override
     public void onReceive(Context context, Intent intent) {
-        Bundle bundle  = intent.getExtras();
-        JSONObject options;
+        JSONObject options = Options.getExtras(context, intent);
 
-        try {
-            String data = bundle.getString(Options.EXTRA);
-            options = new JSONObject(data);
-        } catch (JSONException e) {
-            e.printStackTrace();
+        if (options == null)
             return;
-        }
 
         NotificationWrapper notification =
                 new Builder(context, options).build();
@@ -28,7 +28,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
 
-import org.json.JSONException;
 import org.json.JSONObject;
 
 /**
@@ -48,23 +47,21 @@ abstract public class AbstractClickActivity extends Activity {
         super.onCreate(state);
 
         Intent intent   = getIntent();
-        Bundle bundle   = intent.getExtras();
         Context context = getApplicationContext();
+        JSONObject options = Options.getExtras(context, intent);
 
-        try {
-            String data = bundle.getString(Options.EXTRA);
-            JSONObject options = new JSONObject(data);
+        if (options == null) {
+            finish();
+            return;
+        }
 
-            Builder builder =
-                    new Builder(context, options);
+        Builder builder =
+                new Builder(context, options);
 
-            NotificationWrapper notification =
-                    buildNotification(builder);
+        NotificationWrapper notification =
+                buildNotification(builder);
 
-            onClick(notification);
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
+        onClick(notification);
     }
 
     /**
@@ -30,6 +30,7 @@ import android.content.Intent;
 import org.json.JSONObject;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This class is triggered upon reboot of the device. It needs to re-register
@@ -38,8 +39,17 @@ import java.util.List;
  */
 abstract public class AbstractRestoreReceiver extends BroadcastReceiver {
 
+    // Action to resume an interrupted restore
+    public static final String ACTION_RESUME =
+            "com.commontime.plugin.notification.action.RESUME_RESTORE";
+
+    // If a restore is running within this process
+    private static final AtomicBoolean running = new AtomicBoolean(false);
+
     /**
-     * Called on device reboot.
+     * Called on device reboot. The notifications are restored in the
+     * background as the restore of large stores would exceed the time
+     * limit of the broadcast.
      *
      * @param context
      *      Application context
@@ -48,24 +58,92 @@ abstract public class AbstractRestoreReceiver extends BroadcastReceiver {
      */
     @Override
     public void onReceive (Context context, Intent intent) {
-        Manager notificationMgr =
-                Manager.getInstance(context);
+        final Context app = context.getApplicationContext();
 
-        List<JSONObject> options =
-                notificationMgr.getOptions();
+        // The resume alarm may fire after the restore has completed
+        if (ACTION_RESUME.equals(intent.getAction()) && !RestoreTask.isPending(app))
+            return;
 
-        for (JSONObject data : options) {
-            Builder builder = new Builder(context, data);
+        Config config = Config.getInstance(app);
 
-            NotificationWrapper notification =
-                    buildNotification(builder);
+        if (config.isWindowed()) {
+            WindowedScheduler.getInstance(app).reset();
+        }
 
-            onRestore(notification);
+        if (config.isCoalescing() || config.isWindowed()) {
+            restoreAlarm(app, Manager.getInstance(app));
+            RestoreTask.reset(app);
+            return;
         }
+
+        if (!running.compareAndSet(false, true))
+            return;
+
+        final PendingResult result = goAsync();
+        final RestoreTask task = new RestoreTask(app, this, result);
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    running.set(false);
+                }
+            }
+        }, "NotificationRestore").start();
+    }
+
+    /**
+     * Resume the restore if it has been interrupted, e.g. because the
+     * process has been killed before all notifications were restored.
+     *
+     * @param context
+     *      Application context
+     * @param receiver
+     *      The restore receiver to send the broadcast to
+     */
+    public static void resumeIfPending (Context context, Class<?> receiver) {
+
+        if (!RestoreTask.isPending(context))
+            return;
+
+        Intent intent = new Intent(context, receiver)
+                .setAction(ACTION_RESUME);
+
+        context.sendBroadcast(intent);
+    }
+
+    /**
+     * Register the single alarm of the coalescing scheduler or the alarms
+     * of the windowed scheduler. Only one notification is built to resolve
+     * the receiver of the alarms.
+     *
+     * @param context
+     *      Application context
+     * @param notificationMgr
+     *      Manager of the persisted notifications
+     */
+    private void restoreAlarm (Context context, Manager notificationMgr) {
+        List<Integer> ids = notificationMgr.getIds();
+
+        if (ids.isEmpty())
+            return;
+
+        JSONObject data = notificationMgr.getRecord(ids.get(0)).getOptions();
+
+        if (data == null)
+            return;
+
+        Builder builder = new Builder(context, data);
+
+        buildNotification(builder).scheduleAlarm();
     }
 
     /**
-     * Called when a local notification need to be restored.
+     * Called when a local notification need to be restored. The
+     * notification is still stored, so that only its alarm needs to be
+     * registered again, see NotificationWrapper.scheduleAlarm.
      *
      * @param notification
      *      Wrapper around the local notification
@@ -26,12 +26,12 @@ package com.commontime.plugin.notification.notification;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.os.Bundle;
+import android.os.SystemClock;
 
-import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Abstract broadcast receiver for local notifications. Creates the
@@ -49,30 +49,102 @@ abstract public class AbstractTriggerReceiver extends BroadcastReceiver {
      */
     @Override
     public void onReceive(Context context, Intent intent) {
-        Bundle bundle  = intent.getExtras();
-        Options options;
+        long start = SystemClock.elapsedRealtime();
 
-        try {
-            String data = bundle.getString(Options.EXTRA);
-            JSONObject dict = new JSONObject(data);
+        Metrics.wakeup();
 
-            options = new Options(context).parse(dict);
-        } catch (JSONException e) {
-            e.printStackTrace();
+        if (CoalescingScheduler.ACTION_DUE.equals(intent.getAction())) {
+            onDue(context, start);
             return;
         }
 
-        if (options == null)
+        if (WindowedScheduler.ACTION_MAINTAIN.equals(intent.getAction())) {
+            WindowedScheduler.getInstance(context).onMaintain(getClass());
             return;
+        }
+
+        JSONObject dict = Options.getExtras(context, intent);
 
-        if (isFirstAlarmInFuture(options))
+        if (dict == null)
             return;
 
+        Options options = new Options(context, dict);
+
         Builder builder = new Builder(options);
         NotificationWrapper notification = buildNotification(builder);
         boolean updated = notification.isUpdate();
 
+        Config config = Config.getInstance(context);
+
+        if (options.getRecurrence().isCalendarBased()
+                && !config.isCoalescing() && !config.isWindowed()) {
+            notification.registerNextAlarm();
+        }
+
+        Metrics.trigger();
         onTrigger(notification, updated);
+        Metrics.notified(SystemClock.elapsedRealtime() - start);
+
+        if (config.isWindowed()) {
+            WindowedScheduler.getInstance(context)
+                    .onTriggered(options.getId(), getClass());
+        } else if (!config.isCoalescing()) {
+            advance(context, options.getId());
+        }
+    }
+
+    /**
+     * Called when the single alarm of the coalescing scheduler was
+     * triggered. Triggers every notification which is due and registers
+     * the alarm for the next one.
+     *
+     * @param context
+     *      Application context
+     * @param start
+     *      Time the alarm has been received, see SystemClock.elapsedRealtime
+     */
+    private void onDue (Context context, long start) {
+        CoalescingScheduler scheduler = CoalescingScheduler.getInstance(context);
+        long now = System.currentTimeMillis();
+        List<NotificationRecord> records = scheduler.getDue(now);
+
+        for (NotificationRecord record : records) {
+            JSONObject dict = record.getOptions();
+
+            if (dict == null)
+                continue;
+
+            Options options = new Options(context, dict);
+            Builder builder = new Builder(options);
+            NotificationWrapper notification = buildNotification(builder);
+            boolean updated = notification.isUpdate();
+
+            Metrics.trigger();
+            onTrigger(notification, updated);
+            Metrics.notified(SystemClock.elapsedRealtime() - start);
+        }
+
+        scheduler.advance(records, now);
+        scheduler.arm(getClass());
+    }
+
+    /**
+     * Move the next trigger time of the notification past the trigger, as
+     * the OS repeats the alarms of the default scheduler on its own.
+     *
+     * @param context
+     *      Application context
+     * @param id
+     *      The notification ID
+     */
+    private void advance (Context context, int id) {
+        NotificationStore store   = NotificationStore.getInstance(context);
+        NotificationRecord record = store.get(id);
+
+        if (record != null) {
+            store.advance(Collections.singletonList(record),
+                    System.currentTimeMillis());
+        }
     }
 
     /**
@@ -93,30 +165,4 @@ abstract public class AbstractTriggerReceiver extends BroadcastReceiver {
      */
     abstract public NotificationWrapper buildNotification (Builder builder);
 
-    /*
-     * If you set a repeating alarm at 11:00 in the morning and it
-     * should trigger every morning at 08:00 o'clock, it will
-     * immediately fire. E.g. Android tries to make up for the
-     * 'forgotten' reminder for that day. Therefore we ignore the event
-     * if Android tries to 'catch up'.
-     */
-    private Boolean isFirstAlarmInFuture (Options options) {
-        NotificationWrapper notification = new Builder(options).build();
-
-        if (!notification.isRepeating())
-            return false;
-
-        Calendar now    = Calendar.getInstance();
-        Calendar alarm  = Calendar.getInstance();
-
-        alarm.setTime(notification.getOptions().getTriggerDate());
-
-        int alarmHour   = alarm.get(Calendar.HOUR_OF_DAY);
-        int alarmMin    = alarm.get(Calendar.MINUTE);
-        int currentHour = now.get(Calendar.HOUR_OF_DAY);
-        int currentMin  = now.get(Calendar.MINUTE);
-
-        return (currentHour != alarmHour && currentMin != alarmMin);
-    }
-
 }
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package com.commontime.plugin.notification.notification;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Materializes bundled assets and raw resources as files, so that they can
+ * be referenced by URI. The files are named after the hash of their source
+ * path and live in a folder per app version, hence an existing file always
+ * has the right content and is not copied again. Files are written to a
+ * temp file first and renamed afterwards, so that concurrent readers never
+ * see partial files. Materialized files are remembered per process.
+ */
+class AssetCache {
+
+    // Size of the copy buffer
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    // Materialized files by source path
+    private static final Map<String, File> index =
+            new ConcurrentHashMap<String, File>();
+
+    // Folder of the current app version, null if not created yet
+    private static File folder;
+
+    // Tag of the installed app version, null if not read yet
+    private static String versionTag;
+
+    /**
+     * Opens the content of a source.
+     */
+    interface Source {
+
+        /**
+         * Open the content to copy.
+         */
+        InputStream open() throws IOException;
+
+    }
+
+    // Application context
+    private final Context context;
+
+    // Parent folder of the version folders
+    private final File storage;
+
+    /**
+     * Constructor
+     *
+     * @param context
+     *      Application context
+     * @param storage
+     *      Parent folder of the version folders
+     */
+    AssetCache(Context context, File storage) {
+        this.context = context;
+        this.storage = storage;
+    }
+
+    /**
+     * File with the content of the source. The content gets copied only if
+     * the file does not exist yet.
+     *
+     * @param path
+     *      Path of the source, e.g. the asset path
+     * @param ext
+     *      File extension like .png
+     * @param source
+     *      Opens the content of the source
+     *
+     * @return
+     *      null if the content could not be copied
+     */
+    File materialize(String path, String ext, Source source) {
+        File file = index.get(path);
+
+        if (file != null && file.exists())
+            return file;
+
+        File dir = getFolder(context, storage);
+
+        if (dir == null)
+            return null;
+
+        file = new File(dir, hash(path) + ext);
+
+        if (file.length() > 0 || copy(source, file)) {
+            index.put(path, file);
+            return file;
+        }
+
+        return null;
+    }
+
+    /**
+     * Copy the content into a temp file and rename it to the target file.
+     *
+     * @param source
+     *      Opens the content of the source
+     * @param file
+     *      The target file
+     *
+     * @return
+     *      true if the target file exists afterwards
+     */
+    private boolean copy(Source source, File file) {
+        File tmp = null;
+
+        try {
+            tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+
+            InputStream in = source.open();
+
+            try {
+                OutputStream out = new FileOutputStream(tmp);
+
+                try {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    int read;
+
+                    while ((read = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                    }
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+
+            // Another thread might have been faster, its copy is as good
+            return tmp.renameTo(file) || file.exists();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            if (tmp != null && tmp.exists()) {
+                //noinspection ResultOfMethodCallIgnored
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Folder of the current app version. Folders of other versions are
+     * deleted when the folder is created. Locks the class, since the
+     * instances share the folder.
+     *
+     * @param context
+     *      Application context
+     * @param storage
+     *      Parent folder of the version folders
+     */
+    private static synchronized File getFolder(Context context, File storage) {
+        File dir = new File(storage, getVersionTag(context));
+
+        if (dir.equals(folder) && dir.isDirectory())
+            return dir;
+
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.e("Asset", "Can not create folder: " + dir);
+            return null;
+        }
+
+        File[] others = storage.listFiles();
+
+        if (others != null) {
+            for (File other : others) {
+                if (other.isDirectory() && other.getName().startsWith("v")
+                        && !other.equals(dir)) {
+                    delete(other);
+                }
+            }
+        }
+
+        folder = dir;
+
+        return dir;
+    }
+
+    /**
+     * Tag of the installed app version, which changes with every update.
+     * An update restarts the process, so the tag is read once.
+     *
+     * @param context
+     *      Application context
+     */
+    private static String getVersionTag(Context context) {
+
+        if (versionTag != null)
+            return versionTag;
+
+        try {
+            PackageInfo info = context.getPackageManager()
+                    .getPackageInfo(context.getPackageName(), 0);
+
+            versionTag = "v" + info.versionCode + "-" + info.lastUpdateTime;
+        } catch (Exception e) {
+            e.printStackTrace();
+            versionTag = "v0";
+        }
+
+        return versionTag;
+    }
+
+    /**
+     * Delete the folder including its files.
+     *
+     * @param dir
+     *      The folder to delete
+     */
+    private static void delete(File dir) {
+        File[] files = dir.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+
+        //noinspection ResultOfMethodCallIgnored
+        dir.delete();
+    }
+
+    /**
+     * Hex encoded SHA-1 hash of the text.
+     *
+     * @param text
+     *      The text to hash
+     */
+    static String hash(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            StringBuilder hex    = new StringBuilder();
+
+            for (byte b : digest.digest(text.getBytes("UTF-8"))) {
+                hex.append(String.format("%02x", b));
+            }
+
+            return hex.toString();
+        } catch (Exception e) {
+            return Integer.toHexString(text.hashCode());
+        }
+    }
+
+}
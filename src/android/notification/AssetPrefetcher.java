@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package com.commontime.plugin.notification.notification;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Prepares the assets of scheduled notifications in the background. Remote
+ * icons and sounds get downloaded, drawables resolved and the large icon
+ * decoded into the bitmap cache, so that the trigger receiver finds
+ * everything ready when the alarm fires.
+ */
+final class AssetPrefetcher {
+
+    // Single worker, prefetching is not urgent
+    private static final ExecutorService worker =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "NotificationPrefetcher");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+
+    /**
+     * Not meant to be instantiated.
+     */
+    private AssetPrefetcher() {}
+
+    /**
+     * Queue the notifications to prefetch their assets.
+     *
+     * @param notifications
+     *      The scheduled notifications
+     */
+    static void prefetch(List<NotificationWrapper> notifications) {
+        final List<Options> options = new ArrayList<Options>();
+
+        for (NotificationWrapper notification : notifications) {
+            options.add(notification.getOptions());
+        }
+
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Options opts : options) {
+                    try {
+                        opts.prefetchAssets();
+                        Metrics.prefetched();
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        });
+    }
+
+}
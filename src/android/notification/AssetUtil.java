@@ -24,24 +24,17 @@
 package com.commontime.plugin.notification.notification;
 
 import android.content.Context;
-import android.content.res.AssetManager;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.media.RingtoneManager;
 import android.net.Uri;
-import android.os.StrictMode;
 import android.util.Log;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
 
 /**
  * Util class to map unified asset URIs to native URIs. URIs like file:///
@@ -57,6 +50,18 @@ class AssetUtil {
     // Placeholder URI for default sound
     private static final String DEFAULT_SOUND = "res://platform_default";
 
+    // Max time to wait for a remote asset in milliseconds
+    private static final long FETCH_TIMEOUT = 15000;
+
+    // Decoding buffer per thread, as used by BitmapFactory by default
+    private static final ThreadLocal<byte[]> TEMP_STORAGE =
+            new ThreadLocal<byte[]>() {
+                @Override
+                protected byte[] initialValue() {
+                    return new byte[16 * 1024];
+                }
+            };
+
     // Ref to the context passed through the constructor to access the
     // resources and app directory.
     private final Context context;
@@ -159,32 +164,24 @@ class AssetUtil {
 			return Uri.EMPTY;
 		}
 
-        String resPath  = path.replaceFirst("file:/", "www");
+        final String resPath = path.replaceFirst("file:/", "www");
         String fileName = resPath.substring(resPath.lastIndexOf('/') + 1);
-		String storage  = dir.toString() + STORAGE_FOLDER;
-		File file       = new File(storage, fileName);
-
-        //noinspection ResultOfMethodCallIgnored
-        new File(storage).mkdir();
-
-		try {
-			AssetManager assets = context.getAssets();
-			FileOutputStream outStream = new FileOutputStream(file);
-			InputStream inputStream = assets.open(resPath);
-
-			copyFile(inputStream, outStream);
-
-			outStream.flush();
-			outStream.close();
-
-			return Uri.fromFile(file);
-
-		} catch (Exception e) {
-			Log.e("Asset", "File not found: assets/" + resPath);
-			e.printStackTrace();
-		}
+        String extName  = fileName.contains(".")
+                ? fileName.substring(fileName.lastIndexOf('.')) : "";
+
+        File file = getCache(dir).materialize(path, extName, new AssetCache.Source() {
+            @Override
+            public InputStream open() throws IOException {
+                return context.getAssets().open(resPath);
+            }
+        });
+
+        if (file == null) {
+            Log.e("Asset", "File not found: assets/" + resPath);
+            return Uri.EMPTY;
+        }
 
-		return Uri.EMPTY;
+        return Uri.fromFile(file);
 	}
 
 	/**
@@ -206,117 +203,126 @@ class AssetUtil {
 
         String resPath = path.replaceFirst("res://", "");
 
-		int resId = getResIdForDrawable(resPath);
+		final int resId = getResIdForDrawable(resPath);
 
 		if (resId == 0) {
 			Log.e("Asset", "File not found: " + resPath);
 			return Uri.EMPTY;
 		}
 
-        String resName = extractResourceName(resPath);
         String extName = extractResourceExtension(resPath);
-        String storage = dir.toString() + STORAGE_FOLDER;
-        File file      = new File(storage, resName + extName);
-
-        //noinspection ResultOfMethodCallIgnored
-        new File(storage).mkdir();
 
-		try {
-			Resources res = context.getResources();
-			FileOutputStream outStream = new FileOutputStream(file);
-			InputStream inputStream = res.openRawResource(resId);
-			copyFile(inputStream, outStream);
+        File file = getCache(dir).materialize(path, extName, new AssetCache.Source() {
+            @Override
+            public InputStream open() throws IOException {
+                return context.getResources().openRawResource(resId);
+            }
+        });
 
-			outStream.flush();
-			outStream.close();
-
-			return Uri.fromFile(file);
-
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
+        if (file == null)
+            return Uri.EMPTY;
 
-        return Uri.EMPTY;
+        return Uri.fromFile(file);
 	}
 
+    /**
+     * Cache of the materialized assets and resources.
+     *
+     * @param dir
+     *      The external cache dir
+     */
+    private AssetCache getCache(File dir) {
+        return new AssetCache(context, new File(dir.toString() + STORAGE_FOLDER));
+    }
+
 	/**
-	 * Uri from remote located content.
+	 * Uri from remote located content. Points to the file of the download
+	 * cache. If not cached yet, the content gets downloaded in the
+	 * background and the URI is empty until then.
      *
 	 * @param path
      *      Remote address
      *
 	 * @return
-     *      Uri of the downloaded file
+     *      Uri of the downloaded file or Uri.EMPTY
 	 */
 	private Uri getUriFromRemote(String path) {
-        File dir = context.getExternalCacheDir();
+        RemoteAssetFetcher fetcher = getFetcher();
 
-        if (dir == null) {
-            Log.e("Asset", "Missing external cache dir");
+        if (fetcher == null)
             return Uri.EMPTY;
-        }
 
-        String resName  = extractResourceName(path);
-        String extName  = extractResourceExtension(path);
-        String storage  = dir.toString() + STORAGE_FOLDER;
-        File file       = new File(storage, resName + extName);
+        File file = fetcher.getCached(path);
 
-        //noinspection ResultOfMethodCallIgnored
-        new File(storage).mkdir();
+        if (file == null) {
+            fetcher.fetch(path);
+            return Uri.EMPTY;
+        }
 
-        try {
-            URL url = new URL(path);
-			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        return Uri.fromFile(file);
+	}
 
-			StrictMode.ThreadPolicy policy =
-			        new StrictMode.ThreadPolicy.Builder().permitAll().build();
+    /**
+     * If the path points to remote content. Such paths are kept as they
+     * are and resolved each time they are used, since the file of the
+     * download cache may get evicted.
+     *
+     * @param path
+     *      The given path, may be null
+     */
+    static boolean isRemote (String path) {
+        return path != null && path.startsWith("http");
+    }
 
-			StrictMode.setThreadPolicy(policy);
+    /**
+     * Native URI for a stored URI, which is either native already or
+     * points to remote content.
+     *
+     * @param uri
+     *      The stored URI
+     */
+    Uri resolve (String uri) {
 
-            connection.setRequestProperty("Connection", "close");
-            connection.setConnectTimeout(5000);
-			connection.connect();
+        if (isRemote(uri))
+            return getUriFromRemote(uri);
 
-			InputStream input = connection.getInputStream();
-			FileOutputStream outStream = new FileOutputStream(file);
+        return Uri.parse(uri);
+    }
 
-			copyFile(input, outStream);
+    /**
+     * Download the remote content into the cache unless it is cached
+     * already. Blocks until the download has finished.
+     *
+     * @param path
+     *      Remote address
+     */
+    void prefetch(String path) {
 
-			outStream.flush();
-			outStream.close();
+        if (path == null || !path.startsWith("http"))
+            return;
 
-			return Uri.fromFile(file);
+        RemoteAssetFetcher fetcher = getFetcher();
 
-		} catch (MalformedURLException e) {
-			Log.e("Asset", "Incorrect URL");
-			e.printStackTrace();
-		} catch (FileNotFoundException e) {
-			Log.e("Asset", "Failed to create new File from HTTP Content");
-			e.printStackTrace();
-		} catch (IOException e) {
-			Log.e("Asset", "No Input can be created from http Stream");
-			e.printStackTrace();
-		}
+        if (fetcher != null) {
+            fetcher.get(path, FETCH_TIMEOUT);
+        }
+    }
 
-        return Uri.EMPTY;
-	}
+    /**
+     * Downloader of the remote content or null if the external cache dir
+     * is missing.
+     */
+    private RemoteAssetFetcher getFetcher() {
+        File dir = context.getExternalCacheDir();
 
-	/**
-	 * Copy content from input stream into output stream.
-	 *
-	 * @param in
-	 *      The input stream
-	 * @param out
-	 *      The output stream
-	 */
-	private void copyFile(InputStream in, OutputStream out) throws IOException {
-		byte[] buffer = new byte[1024];
-		int read;
+        if (dir == null) {
+            Log.e("Asset", "Missing external cache dir");
+            return null;
+        }
 
-		while ((read = in.read(buffer)) != -1) {
-			out.write(buffer, 0, read);
-		}
-	}
+        return RemoteAssetFetcher.getInstance(
+                new File(dir.toString() + STORAGE_FOLDER));
+    }
 
     /**
      * Resource ID for drawable.
@@ -325,13 +331,7 @@ class AssetUtil {
      *      Resource path as string
      */
     int getResIdForDrawable(String resPath) {
-        int resId = getResIdForDrawable(getPkgName(), resPath);
-
-        if (resId == 0) {
-            resId = getResIdForDrawable("android", resPath);
-        }
-
-        return resId;
+        return getResolver().getDrawable(extractResourceName(resPath));
     }
 
     /**
@@ -343,16 +343,7 @@ class AssetUtil {
      *      Resource path as string
      */
     int getResIdForDrawable(String clsName, String resPath) {
-        String drawable = extractResourceName(resPath);
-        int resId = 0;
-
-        try {
-            Class<?> cls  = Class.forName(clsName + ".R$drawable");
-
-            resId = (Integer) cls.getDeclaredField(drawable).get(Integer.class);
-        } catch (Exception ignore) {}
-
-        return resId;
+        return getResolver().getDrawable(clsName, extractResourceName(resPath));
     }
 
     /**
@@ -363,31 +354,100 @@ class AssetUtil {
      */
     Bitmap getIconFromDrawable (String drawable) {
         Resources res = context.getResources();
-        int iconId;
-
-        iconId = getResIdForDrawable(getPkgName(), drawable);
-
-        if (iconId == 0) {
-            iconId = getResIdForDrawable("android", drawable);
-        }
+        int iconId = getResIdForDrawable(drawable);
 
         if (iconId == 0) {
             iconId = android.R.drawable.ic_menu_info_details;
         }
 
-        return BitmapFactory.decodeResource(res, iconId);
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+
+        opts.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(res, iconId, opts);
+
+        prepareDecode(opts);
+
+        return BitmapFactory.decodeResource(res, iconId, opts);
     }
 
     /**
-     * Convert URI to Bitmap.
+     * Convert URI to Bitmap. The image gets downsampled to the size of
+     * a large icon, so that big images do not get decoded in full
+     * resolution.
      *
      * @param uri
      *      Internal image URI
      */
     Bitmap getIconFromUri (Uri uri) throws IOException {
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+
+        opts.inJustDecodeBounds = true;
+        decodeStream(uri, opts);
+
+        if (opts.outWidth <= 0 || opts.outHeight <= 0)
+            return null;
+
+        prepareDecode(opts);
+
+        return decodeStream(uri, opts);
+    }
+
+    /**
+     * Decode the image behind the URI and close the stream afterwards.
+     *
+     * @param uri
+     *      Internal image URI
+     * @param opts
+     *      Decoding options
+     */
+    private Bitmap decodeStream (Uri uri, BitmapFactory.Options opts)
+            throws IOException {
+
         InputStream input = context.getContentResolver().openInputStream(uri);
 
-        return BitmapFactory.decodeStream(input);
+        if (input == null)
+            throw new FileNotFoundException(uri.toString());
+
+        try {
+            return BitmapFactory.decodeStream(input, null, opts);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Turn the options which hold the bounds of the image into options
+     * which decode the image close to the size of a large icon. The sample
+     * size is the largest power of 2 which keeps both sides at least as big
+     * as the icon.
+     *
+     * @param opts
+     *      Decoding options with the bounds of the image
+     */
+    private void prepareDecode (BitmapFactory.Options opts) {
+        Resources res = context.getResources();
+        int width     = res.getDimensionPixelSize(
+                android.R.dimen.notification_large_icon_width);
+        int height    = res.getDimensionPixelSize(
+                android.R.dimen.notification_large_icon_height);
+        int sampleSize = 1;
+
+        while (opts.outWidth / (sampleSize * 2) >= width
+                && opts.outHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+
+        opts.inJustDecodeBounds = false;
+        opts.inSampleSize       = sampleSize;
+        opts.inTempStorage      = getTempStorage();
+    }
+
+    /**
+     * Buffer of the current thread used by the decoder instead of
+     * allocating a new one for each image.
+     */
+    private static byte[] getTempStorage () {
+        return TEMP_STORAGE.get();
     }
 
     /**
@@ -417,7 +477,7 @@ class AssetUtil {
      *      Resource path as string
      */
     private String extractResourceExtension (String resPath) {
-        String extName = "png";
+        String extName = ".png";
 
         if (resPath.contains(".")) {
             extName = resPath.substring(resPath.lastIndexOf('.'));
@@ -427,10 +487,10 @@ class AssetUtil {
     }
 
     /**
-     * Package name specified by context.
+     * Process-wide cache of resolved resource IDs.
      */
-    private String getPkgName () {
-        return context.getPackageName();
+    private ResourceResolver getResolver () {
+        return ResourceResolver.getInstance(context);
     }
 
 }
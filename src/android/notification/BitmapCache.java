@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package com.commontime.plugin.notification.notification;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+/**
+ * Process-wide cache of decoded large icons. Notifications often share the
+ * same icon, which then gets decoded only once. The cache is bounded by the
+ * size of the bitmaps in bytes and releases memory when the system runs low
+ * on it.
+ */
+class BitmapCache implements ComponentCallbacks2 {
+
+    // Share of the max heap size used by the cache
+    private static final int HEAP_FRACTION = 16;
+
+    // The single instance shared by the whole process
+    private static BitmapCache instance;
+
+    // Decoded bitmaps by resolved icon URI
+    private final LruCache<String, Bitmap> bitmaps;
+
+    /**
+     * Constructor
+     *
+     * @param maxBytes
+     *      Max size of all cached bitmaps in bytes
+     */
+    private BitmapCache(int maxBytes) {
+        bitmaps = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getRowBytes() * bitmap.getHeight();
+            }
+        };
+    }
+
+    /**
+     * Static method to retrieve the shared instance.
+     *
+     * @param context
+     *      Application context
+     */
+    static synchronized BitmapCache getInstance(Context context) {
+
+        if (instance == null) {
+            Context app  = context.getApplicationContext();
+            long maxHeap = Runtime.getRuntime().maxMemory();
+
+            instance = new BitmapCache((int) (maxHeap / HEAP_FRACTION));
+            app.registerComponentCallbacks(instance);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Cached bitmap or null if not found.
+     *
+     * @param key
+     *      Resolved icon URI
+     */
+    Bitmap get(String key) {
+        Bitmap bitmap = bitmaps.get(key);
+
+        if (bitmap != null) {
+            Metrics.iconCacheHit();
+        } else {
+            Metrics.iconCacheMiss();
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * Add the decoded bitmap.
+     *
+     * @param key
+     *      Resolved icon URI
+     * @param bitmap
+     *      The decoded bitmap, null is ignored
+     */
+    void put(String key, Bitmap bitmap) {
+
+        if (bitmap != null) {
+            bitmaps.put(key, bitmap);
+        }
+    }
+
+    /**
+     * Called when the system wants the process to release memory.
+     *
+     * @param level
+     *      The context of the trim
+     */
+    @Override
+    public void onTrimMemory(int level) {
+
+        if (level >= TRIM_MEMORY_MODERATE
+                || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            bitmaps.evictAll();
+        } else if (level >= TRIM_MEMORY_BACKGROUND
+                || level == TRIM_MEMORY_RUNNING_LOW) {
+            bitmaps.trimToSize(bitmaps.maxSize() / 2);
+        }
+    }
+
+    /**
+     * Called when the overall system is running low on memory.
+     */
+    @Override
+    public void onLowMemory() {
+        bitmaps.evictAll();
+    }
+
+    /**
+     * Called when the device configuration changes.
+     *
+     * @param config
+     *      The new device configuration
+     */
+    @Override
+    public void onConfigurationChanged(Configuration config) {
+        // Icons do not depend on the configuration
+    }
+
+}
@@ -23,8 +23,6 @@
 
 package com.commontime.plugin.notification.notification;
 
-import android.app.NotificationChannel;
-import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
@@ -32,12 +30,9 @@ import android.net.Uri;
 import android.os.Build;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.NotificationManagerCompat;
-import android.text.TextUtils;
 
 import org.json.JSONObject;
 
-import java.util.Random;
-
 /**
  * Builder class for local notifications. Build fully configured local
  * notification specified by JSON object passed from JS side.
@@ -54,14 +49,40 @@ public class Builder {
     // Receiver to handle the trigger event
     private Class<?> triggerReceiver;
 
+    // Default receiver to handle the clear event
+    private static Class<?> defaultClearReceiver = ClearReceiver.class;
+
+    // Default activity to handle the click event
+    private static Class<?> defaultClickActivity = ClickActivity.class;
+
+    // Default activity to handle the action click event
+    private static Class<?> defaultActionClickActivity = ActionClickActivity.class;
+
     // Receiver to handle the clear event
-    private Class<?> clearReceiver = ClearReceiver.class;
+    private Class<?> clearReceiver = defaultClearReceiver;
 
     // Activity to handle the click event
-    private Class<?> clickActivity = ClickActivity.class;
+    private Class<?> clickActivity = defaultClickActivity;
 
     // Activity to handle the action click event
-    private Class<?> actionClickActivity = ActionClickActivity.class;
+    private Class<?> actionClickActivity = defaultActionClickActivity;
+
+    // JSON encoded options added to the intents, null if not encoded yet
+    private String json;
+
+    /**
+     * Release the intents of the delete, click and action events of the
+     * notification built with the default receiver and activities.
+     *
+     * @param context
+     *      Application context
+     * @param id
+     *      The notification ID
+     */
+    static void release(Context context, int id) {
+        PendingIntents.release(context, id, defaultClearReceiver,
+                defaultClickActivity, defaultActionClickActivity);
+    }
 
     /**
      * Constructor
@@ -73,7 +94,7 @@ public class Builder {
      */
     public Builder(Context context, JSONObject options) {
         this.context = context;
-        this.options = new Options(context).parse(options);
+        this.options = new Options(context, options);
     }
 
     /**
@@ -136,13 +157,15 @@ public class Builder {
      */
     public NotificationWrapper build() {
         Uri sound = options.getSoundUri();
+        String channel = ChannelRegistry.getInstance(context)
+                .resolve(options.getChannel());
         NotificationCompat.BigTextStyle style;
         NotificationCompat.Builder builder;
 
         style = new NotificationCompat.BigTextStyle()
                 .bigText(options.getText());
 
-        builder = new NotificationCompat.Builder(context, CT_CHANNEL)
+        builder = new NotificationCompat.Builder(context, channel)
                 .setDefaults(0)
                 .setContentTitle(options.getTitle())
                 .setContentText(options.getText())
@@ -151,21 +174,16 @@ public class Builder {
                 .setAutoCancel(options.isAutoClear())
                 .setOngoing(options.isOngoing())
                 .setStyle(style)
-                .setChannelId(CT_CHANNEL)
+                .setChannelId(channel)
                 .setLights(options.getLedColor(), 500, 500);
 
-        if (android.os.Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            NotificationChannel mChannel = new NotificationChannel(CT_CHANNEL, "Test", NotificationManager.IMPORTANCE_DEFAULT);
-            NotificationManager man = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
-            man.createNotificationChannel(mChannel);
-        }
-
         if (android.os.Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            try {
-                Class<?> cls  = Class.forName(context.getPackageName() + ".R$drawable");
-                int resId = (Integer) cls.getDeclaredField("icontransparent").get(Integer.class);
-                builder.setSmallIcon(resId);                
-            } catch (Exception ignore) {
+            int resId = getResolver().getDrawable(
+                    context.getPackageName(), "icontransparent");
+
+            if (resId != 0) {
+                builder.setSmallIcon(resId);
+            } else {
                 builder.setSmallIcon(options.getSmallIcon());
             }
             builder.setLargeIcon(options.getIconBitmap());
@@ -179,13 +197,14 @@ public class Builder {
             builder.setSound(sound);
         }
 
-        if(!TextUtils.isEmpty(options.getCategoryIdentifier()))
-            applyActionReceiver(builder);
+        if (options.getCompiledCategory() != null)
+            applyActionReceiver(builder, options.getCompiledCategory());
 
         applyDeleteReceiver(builder);
         applyContentReceiver(builder);
 
-        return new NotificationWrapper(context, options, builder, triggerReceiver);
+        return new NotificationWrapper(context, options, builder, triggerReceiver,
+                clearReceiver, clickActivity, actionClickActivity);
     }
 
     /**
@@ -200,12 +219,14 @@ public class Builder {
         if (clearReceiver == null)
             return;
 
-        Intent deleteIntent = new Intent(context, clearReceiver)
-                .setAction(options.getIdStr())
-                .putExtra(Options.EXTRA, options.toString());
+        Intent deleteIntent = putExtras(new Intent(context, clearReceiver)
+                .setAction(options.getIdStr()));
+
+        int requestCode = PendingIntents.getRequestCode(
+                options.getId(), PendingIntents.DELETE);
 
         PendingIntent dpi = PendingIntent.getBroadcast(
-                context, 0, deleteIntent, PendingIntent.FLAG_CANCEL_CURRENT);
+                context, requestCode, deleteIntent, PendingIntent.FLAG_UPDATE_CURRENT);
 
         builder.setDeleteIntent(dpi);
     }
@@ -222,14 +243,15 @@ public class Builder {
         if (clickActivity == null)
             return;
 
-        Intent intent = new Intent(context, clickActivity)
-                .putExtra(Options.EXTRA, options.toString())
+        Intent intent = putExtras(new Intent(context, clickActivity)
+                .setAction(options.getIdStr()))
                 .setFlags(Intent.FLAG_ACTIVITY_NO_HISTORY);
 
-        int requestCode = new Random().nextInt();
+        int requestCode = PendingIntents.getRequestCode(
+                options.getId(), PendingIntents.CONTENT);
 
         PendingIntent contentIntent = PendingIntent.getActivity(
-                context, requestCode, intent, PendingIntent.FLAG_CANCEL_CURRENT);
+                context, requestCode, intent, PendingIntent.FLAG_UPDATE_CURRENT);
 
         builder.setContentIntent(contentIntent);
     }
@@ -240,33 +262,86 @@ public class Builder {
      *
      * @param builder
      *      Local notification builder instance
+     * @param category
+     *      Compiled category with the actions
      */
-    private void applyActionReceiver(NotificationCompat.Builder builder) {
+    private void applyActionReceiver(NotificationCompat.Builder builder,
+                                     CategoryRegistry.Category category) {
 
         if (actionClickActivity == null)
             return;
 
-        try
-        {
-            for(int i = 0; i < options.getCategoryActionCount(); i++)
-            {
-                JSONObject action = options.getCategoryAction(i);
+        int count = Math.min(category.getActionCount(),
+                PendingIntents.MAX_ACTIONS);
 
-                Intent intent = new Intent(context, actionClickActivity)
-                        .putExtra(Options.EXTRA, options.toString())
-                        .putExtra(ActionClickActivity.ACTION_PARAM, action.toString())
-                        .setFlags(Intent.FLAG_ACTIVITY_NO_HISTORY);
+        for (int i = 0; i < count; i++) {
+            Intent intent = putExtras(new Intent(context, actionClickActivity)
+                    .setAction(options.getIdStr()))
+                    .putExtra(ActionClickActivity.ACTION_PARAM, category.getActionExtra(i))
+                    .putExtra(ActionClickActivity.ACTION_ID, category.getActionIdentifier(i))
+                    .setFlags(Intent.FLAG_ACTIVITY_NO_HISTORY);
 
-                int requestCode = new Random().nextInt();
+            int requestCode = PendingIntents.getActionRequestCode(
+                    options.getId(), i);
 
-                PendingIntent actionIntent = PendingIntent.getActivity(
-                        context, requestCode, intent, PendingIntent.FLAG_CANCEL_CURRENT);
+            PendingIntent actionIntent = PendingIntent.getActivity(
+                    context, requestCode, intent, PendingIntent.FLAG_UPDATE_CURRENT);
 
-                builder.addAction(new NotificationCompat.Action(context.getResources().getIdentifier("action_hand", "drawable", context.getPackageName()), action.getString("title"), actionIntent));
-            }
+            builder.addAction(new NotificationCompat.Action(category.getActionIcon(i),
+                    category.getActionTitle(i), actionIntent));
         }
-        catch(Exception e)
-        {
+    }
+
+    /**
+     * Add the options or only the ID to the intent. The options get
+     * encoded once per build.
+     *
+     * @param intent
+     *      The intent to add the extras to
+     */
+    private Intent putExtras(Intent intent) {
+
+        if (json == null && !Config.getInstance(context).isIdOnly()) {
+            json = options.toString();
         }
+
+        return Options.putExtras(context, intent, options.getId(), json);
+    }
+
+    /**
+     * Process-wide cache of resolved resource IDs.
+     */
+    private ResourceResolver getResolver() {
+        return ResourceResolver.getInstance(context);
+    }
+
+    /**
+     * Set default receiver to handle the clear event.
+     *
+     * @param receiver
+     *      Broadcast receiver
+     */
+    public static void setDefaultClearReceiver(Class<?> receiver) {
+        defaultClearReceiver = receiver;
+    }
+
+    /**
+     * Set default activity to handle the click event.
+     *
+     * @param activity
+     *      Activity
+     */
+    public static void setDefaultClickActivity(Class<?> activity) {
+        defaultClickActivity = activity;
+    }
+
+    /**
+     * Set default activity to handle the action click event.
+     *
+     * @param activity
+     *      Activity
+     */
+    public static void setDefaultActionClickActivity(Class<?> activity) {
+        defaultActionClickActivity = activity;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,434 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package com.commontime.plugin.notification.notification;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of the notification categories. Categories get compiled once
+ * with their action titles, icons and intent extras, so that notifications
+ * can reference them by identifier instead of carrying the actions along.
+ * The definitions are persisted to survive a restart of the app.
+ */
+final class CategoryRegistry {
+
+    // Key for private preferences
+    private static final String PREF_KEY = "NotificationCategories";
+
+    // Icon of actions without an own icon
+    private static final String DEFAULT_ICON = "action_hand";
+
+    // Max number of memoized inline categories
+    private static final int MAX_INLINE = 32;
+
+    // Compiled categories by identifier, null if not loaded
+    private static Map<String, Category> categories;
+
+    // Compiled inline categories by identifier, least recently used first
+    private static final Map<String, Category> inline =
+            new LinkedHashMap<String, Category>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Category> eldest) {
+                    return size() > MAX_INLINE;
+                }
+            };
+
+    // Application context passed by constructor
+    private final Context context;
+
+    // Shared private preferences holding the definitions
+    private final SharedPreferences prefs;
+
+    /**
+     * Constructor
+     *
+     * @param context
+     *      Application context
+     */
+    private CategoryRegistry(Context context) {
+        this.context = context;
+        this.prefs   = context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Static method to retrieve class instance.
+     *
+     * @param context
+     *      Application context
+     */
+    static CategoryRegistry getInstance(Context context) {
+        return new CategoryRegistry(context);
+    }
+
+    /**
+     * Compile and register the categories. Existing ones with the same
+     * identifier get replaced.
+     *
+     * @param list
+     *      JSON objects with identifier and actions
+     *
+     * @return
+     *      Number of registered categories, invalid ones are skipped
+     */
+    int register(JSONArray list) {
+        SharedPreferences.Editor editor = prefs.edit();
+        int count = 0;
+
+        synchronized (CategoryRegistry.class) {
+            Map<String, Category> map = getCategories();
+
+            for (int i = 0; i < list.length(); i++) {
+                Category category = compile(context, list.optJSONObject(i));
+
+                if (category == null)
+                    continue;
+
+                map.put(category.getIdentifier(), category);
+                editor.putString(category.getIdentifier(), category.toString());
+                count++;
+            }
+        }
+
+        editor.apply();
+
+        return count;
+    }
+
+    /**
+     * Compiled category by identifier.
+     *
+     * @param identifier
+     *      The category identifier
+     *
+     * @return
+     *      null if not registered
+     */
+    Category get(String identifier) {
+
+        synchronized (CategoryRegistry.class) {
+            return getCategories().get(identifier);
+        }
+    }
+
+    /**
+     * Compiled category of the definition a notification carries along.
+     * A definition without actions references the registered category
+     * with the same identifier if any. Otherwise the definition gets
+     * compiled once and reused as long as it does not change.
+     *
+     * @param dict
+     *      The category definition of the notification
+     */
+    Category resolve(JSONObject dict) {
+        String identifier = dict.optString("identifier", "");
+        String json       = dict.toString();
+
+        if (!dict.has("actions")) {
+            Category category = get(identifier);
+
+            if (category != null)
+                return category;
+        }
+
+        synchronized (CategoryRegistry.class) {
+            Category category = inline.get(identifier);
+
+            if (category == null || !category.toString().equals(json)) {
+                category = new Category(context, identifier, dict, json);
+                inline.put(identifier, category);
+            }
+
+            return category;
+        }
+    }
+
+    /**
+     * Definitions of all registered categories.
+     */
+    JSONArray toJSON() {
+        JSONArray list = new JSONArray();
+
+        synchronized (CategoryRegistry.class) {
+            for (Category category : getCategories().values()) {
+                list.put(category.getDict());
+            }
+        }
+
+        return list;
+    }
+
+    /**
+     * Unregister the categories.
+     *
+     * @param identifiers
+     *      The category identifiers
+     */
+    void remove(List<String> identifiers) {
+        SharedPreferences.Editor editor = prefs.edit();
+
+        synchronized (CategoryRegistry.class) {
+            for (String identifier : identifiers) {
+                getCategories().remove(identifier);
+                editor.remove(identifier);
+            }
+        }
+
+        editor.apply();
+    }
+
+    /**
+     * Unregister all categories.
+     */
+    void clear() {
+
+        synchronized (CategoryRegistry.class) {
+            categories = new LinkedHashMap<String, Category>();
+        }
+
+        prefs.edit().clear().apply();
+    }
+
+    /**
+     * Compiled categories, loaded from the preferences on first access.
+     */
+    private Map<String, Category> getCategories() {
+
+        if (categories != null)
+            return categories;
+
+        categories = new LinkedHashMap<String, Category>();
+
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            try {
+                Category category = compile(context,
+                        new JSONObject(String.valueOf(entry.getValue())));
+
+                if (category != null) {
+                    categories.put(category.getIdentifier(), category);
+                }
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return categories;
+    }
+
+    /**
+     * Compile the category definition.
+     *
+     * @param context
+     *      Application context
+     * @param dict
+     *      JSON object with identifier and actions
+     *
+     * @return
+     *      null if the definition has no identifier
+     */
+    static Category compile(Context context, JSONObject dict) {
+
+        if (dict == null)
+            return null;
+
+        String identifier = dict.optString("identifier", null);
+
+        if (identifier == null || identifier.isEmpty())
+            return null;
+
+        return new Category(context, identifier, dict, dict.toString());
+    }
+
+    /**
+     * Category compiled from its definition. Holds the decoded actions
+     * with their resolved icons and the encoded action extras.
+     */
+    static final class Category {
+
+        // The category identifier
+        private final String identifier;
+
+        // The original definition
+        private final JSONObject dict;
+
+        // The action definitions
+        private final JSONObject[] actions;
+
+        // The action identifiers and titles
+        private final String[] actionIdentifiers;
+        private final String[] actionTitles;
+
+        // The resolved action icons
+        private final int[] actionIcons;
+
+        // The actions encoded as intent extras
+        private final String[] actionExtras;
+
+        // The JSON encoded definition
+        private final String json;
+
+        /**
+         * Constructor
+         *
+         * @param context
+         *      Application context
+         * @param identifier
+         *      The category identifier
+         * @param dict
+         *      The category definition
+         * @param json
+         *      The JSON encoded definition
+         */
+        private Category(Context context, String identifier, JSONObject dict,
+                         String json) {
+            JSONArray list = dict.optJSONArray("actions");
+            int count      = list != null ? list.length() : 0;
+            ResourceResolver resolver = ResourceResolver.getInstance(context);
+
+            this.identifier   = identifier;
+            this.dict         = dict;
+            this.json         = json;
+            actions           = new JSONObject[count];
+            actionIdentifiers = new String[count];
+            actionTitles      = new String[count];
+            actionIcons       = new int[count];
+            actionExtras      = new String[count];
+
+            for (int i = 0; i < count; i++) {
+                JSONObject action = list.optJSONObject(i);
+
+                if (action == null) {
+                    action = new JSONObject();
+                }
+
+                int icon = resolver.getIdentifier(
+                        action.optString("icon", DEFAULT_ICON));
+
+                if (icon == 0) {
+                    icon = resolver.getIdentifier(DEFAULT_ICON);
+                }
+
+                actions[i]           = action;
+                actionIdentifiers[i] = action.optString("identifier");
+                actionTitles[i]      = action.optString("title");
+                actionIcons[i]       = icon;
+                actionExtras[i]      = action.toString();
+            }
+        }
+
+        /**
+         * The category identifier.
+         */
+        String getIdentifier() {
+            return identifier;
+        }
+
+        /**
+         * Copy of the original definition. Changes to the copy do not
+         * affect the compiled category.
+         */
+        JSONObject getDict() {
+            try {
+                return new JSONObject(dict.toString());
+            } catch (JSONException e) {
+                e.printStackTrace();
+                return new JSONObject();
+            }
+        }
+
+        /**
+         * Number of actions.
+         */
+        int getActionCount() {
+            return actions.length;
+        }
+
+        /**
+         * Definition of the action.
+         *
+         * @param pos
+         *      The index of the action
+         */
+        JSONObject getAction(int pos) {
+            return actions[pos];
+        }
+
+        /**
+         * Identifier of the action.
+         *
+         * @param pos
+         *      The index of the action
+         */
+        String getActionIdentifier(int pos) {
+            return actionIdentifiers[pos];
+        }
+
+        /**
+         * Title of the action.
+         *
+         * @param pos
+         *      The index of the action
+         */
+        String getActionTitle(int pos) {
+            return actionTitles[pos];
+        }
+
+        /**
+         * Resource ID of the action icon, 0 if not found.
+         *
+         * @param pos
+         *      The index of the action
+         */
+        int getActionIcon(int pos) {
+            return actionIcons[pos];
+        }
+
+        /**
+         * The action encoded as intent extra.
+         *
+         * @param pos
+         *      The index of the action
+         */
+        String getActionExtra(int pos) {
+            return actionExtras[pos];
+        }
+
+        /**
+         * JSON encoded definition.
+         */
+        public String toString() {
+            return json;
+        }
+
+    }
+
+}
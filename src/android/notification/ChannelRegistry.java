@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package com.commontime.plugin.notification.notification;
+
+import android.annotation.TargetApi;
+import android.app.NotificationChannel;
+import android.app.NotificationChannelGroup;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Registry of the notification channels. Channels get created once per
+ * process and the registry remembers which ones exist, so that building a
+ * notification does not talk to the notification manager each time. A
+ * channel is defined by its settings like importance, sound, vibration
+ * and group, either through the registration API or the channel option
+ * of a notification.
+ */
+final class ChannelRegistry {
+
+    // Channel used by notifications without a channel
+    static final String DEFAULT_CHANNEL = Builder.CT_CHANNEL;
+
+    // Name of the default channel
+    private static final String DEFAULT_NAME = "Test";
+
+    // IDs of the existing channels, null if not loaded
+    private static Set<String> channels;
+
+    // IDs of the existing channel groups
+    private static final Set<String> groups = new HashSet<String>();
+
+    // Application context passed by constructor
+    private final Context context;
+
+    /**
+     * Constructor
+     *
+     * @param context
+     *      Application context
+     */
+    private ChannelRegistry(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Static method to retrieve class instance.
+     *
+     * @param context
+     *      Application context
+     */
+    static ChannelRegistry getInstance(Context context) {
+        return new ChannelRegistry(context);
+    }
+
+    /**
+     * ID of the channel to post a notification to. Channels with settings
+     * get created on first use, unknown ones fall back to the default
+     * channel.
+     *
+     * @param channel
+     *      The channel settings or only its ID, null for the default one
+     */
+    String resolve(JSONObject channel) {
+        String id = channel != null ? channel.optString("id", null) : null;
+
+        if (id == null || id.isEmpty()) {
+            id = DEFAULT_CHANNEL;
+        }
+
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O)
+            return id;
+
+        synchronized (ChannelRegistry.class) {
+            if (getChannels().contains(id))
+                return id;
+
+            if (id.equals(DEFAULT_CHANNEL)) {
+                create(new JSONObject());
+                return id;
+            }
+
+            if (channel.length() > 1 && create(channel))
+                return id;
+        }
+
+        return resolve(null);
+    }
+
+    /**
+     * Create the channel unless it exists already. The settings of an
+     * existing channel cannot be changed except for its name and
+     * description.
+     *
+     * @param channel
+     *      The channel settings
+     *
+     * @return
+     *      false if the settings are invalid
+     */
+    boolean register(JSONObject channel) {
+        String id = channel.optString("id", null);
+
+        if (id == null || id.isEmpty())
+            return false;
+
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O)
+            return true;
+
+        synchronized (ChannelRegistry.class) {
+            return create(channel);
+        }
+    }
+
+    /**
+     * Create or update the channel and its group. Remote sounds are
+     * rejected, as the sound of a channel cannot be changed later on while
+     * the downloaded file may not be cached yet or get evicted.
+     *
+     * @param channel
+     *      The channel settings, the default channel if without ID
+     */
+    @TargetApi(Build.VERSION_CODES.O)
+    private boolean create(JSONObject channel) {
+        String id    = channel.optString("id", DEFAULT_CHANNEL);
+        String name  = channel.optString("name",
+                id.equals(DEFAULT_CHANNEL) ? DEFAULT_NAME : id);
+        String group = channel.optString("group", null);
+
+        if (AssetUtil.isRemote(channel.optString("sound", null))) {
+            Log.e("Channel", "Remote sound not supported: " + id);
+            return false;
+        }
+
+        NotificationChannel mChannel = new NotificationChannel(id, name,
+                parseImportance(channel.opt("importance")));
+
+        if (channel.has("description")) {
+            mChannel.setDescription(channel.optString("description"));
+        }
+
+        if (channel.has("sound")) {
+            Uri sound = AssetUtil.getInstance(context)
+                    .parseSound(channel.optString("sound", null));
+
+            AudioAttributes attrs = new AudioAttributes.Builder()
+                    .setUsage(AudioAttributes.USAGE_NOTIFICATION)
+                    .build();
+
+            mChannel.setSound(Uri.EMPTY.equals(sound) ? null : sound, attrs);
+        }
+
+        if (channel.has("vibrate")) {
+            mChannel.enableVibration(channel.optBoolean("vibrate"));
+        }
+
+        if (channel.has("badge")) {
+            mChannel.setShowBadge(channel.optBoolean("badge"));
+        }
+
+        try {
+            if (group != null && !groups.contains(group)) {
+                getNotMgr().createNotificationChannelGroup(
+                        new NotificationChannelGroup(group,
+                                channel.optString("groupName", group)));
+                groups.add(group);
+            }
+
+            if (group != null) {
+                mChannel.setGroup(group);
+            }
+
+            getNotMgr().createNotificationChannel(mChannel);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        getChannels().add(id);
+
+        return true;
+    }
+
+    /**
+     * Importance of the channel by name like low or high, or by the value
+     * of the constant.
+     *
+     * @param importance
+     *      The name or the value
+     */
+    @TargetApi(Build.VERSION_CODES.O)
+    private static int parseImportance(Object importance) {
+
+        if (importance instanceof Number)
+            return ((Number) importance).intValue();
+
+        String name = importance != null ? importance.toString() : "";
+
+        if (name.equalsIgnoreCase("min"))
+            return NotificationManager.IMPORTANCE_MIN;
+
+        if (name.equalsIgnoreCase("low"))
+            return NotificationManager.IMPORTANCE_LOW;
+
+        if (name.equalsIgnoreCase("high"))
+            return NotificationManager.IMPORTANCE_HIGH;
+
+        if (name.equalsIgnoreCase("max"))
+            return NotificationManager.IMPORTANCE_MAX;
+
+        return NotificationManager.IMPORTANCE_DEFAULT;
+    }
+
+    /**
+     * IDs of the existing channels, loaded from the notification manager
+     * on first access.
+     */
+    @TargetApi(Build.VERSION_CODES.O)
+    private Set<String> getChannels() {
+
+        if (channels != null)
+            return channels;
+
+        channels = new HashSet<String>();
+
+        for (NotificationChannel channel : getNotMgr().getNotificationChannels()) {
+            channels.add(channel.getId());
+        }
+
+        for (NotificationChannelGroup group : getNotMgr().getNotificationChannelGroups()) {
+            groups.add(group.getId());
+        }
+
+        return channels;
+    }
+
+    /**
+     * Notification manager for the application.
+     */
+    private NotificationManager getNotMgr() {
+        return (NotificationManager) context
+                .getSystemService(Context.NOTIFICATION_SERVICE);
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package com.commontime.plugin.notification.notification;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+
+import java.util.List;
+
+/**
+ * Scheduler which registers a single alarm with the OS, for the earliest
+ * due notification of the store. When the alarm fires, the trigger receiver
+ * processes every notification which is due and arms the alarm for the next
+ * one. That keeps the alarm table of the OS small and turns notifications
+ * which are due at the same time into a single wakeup.
+ */
+class CoalescingScheduler {
+
+    // Intent action of the single alarm
+    static final String ACTION_DUE =
+            "com.commontime.plugin.notification.action.DUE";
+
+    // Trigger time of the registered alarm, 0 if not known
+    private static long armedAt = 0;
+
+    // Application context passed by constructor
+    private final Context context;
+
+    /**
+     * Constructor
+     *
+     * @param context
+     *      Application context
+     */
+    private CoalescingScheduler(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Static method to retrieve class instance.
+     *
+     * @param context
+     *      Application context
+     */
+    static CoalescingScheduler getInstance(Context context) {
+        return new CoalescingScheduler(context);
+    }
+
+    /**
+     * Register the alarm for the earliest due notification. Does nothing
+     * if the alarm is already registered for that time. The time is read
+     * under the lock, so that concurrent calls can't leave an outdated
+     * alarm behind.
+     *
+     * @param receiver
+     *      Receiver to handle the trigger event
+     */
+    void arm(Class<?> receiver) {
+
+        synchronized (CoalescingScheduler.class) {
+            long time = getStore().getNextTriggerTime();
+
+            if (time == armedAt)
+                return;
+
+            if (time == 0) {
+                disarm(receiver);
+                return;
+            }
+
+            getAlarmMgr().set(AlarmManager.RTC_WAKEUP, time,
+                    getPendingIntent(receiver));
+
+            armedAt = time;
+        }
+
+        Metrics.alarmRegistered();
+    }
+
+    /**
+     * Unregister the alarm.
+     *
+     * @param receiver
+     *      Receiver to handle the trigger event
+     */
+    void disarm(Class<?> receiver) {
+
+        synchronized (CoalescingScheduler.class) {
+            getAlarmMgr().cancel(getPendingIntent(receiver));
+            armedAt = 0;
+        }
+
+        Metrics.alarmCanceled();
+    }
+
+    /**
+     * Records of all notifications which are due.
+     *
+     * @param now
+     *      Current time in milliseconds
+     */
+    List<NotificationRecord> getDue(long now) {
+        synchronized (CoalescingScheduler.class) {
+            armedAt = 0;
+        }
+
+        return getStore().getBetween(1, now + 1);
+    }
+
+    /**
+     * Move the next trigger time of the processed notifications past the
+     * given time. One-time notifications won't trigger anymore.
+     *
+     * @param records
+     *      The processed notifications
+     * @param now
+     *      Current time in milliseconds
+     */
+    void advance(List<NotificationRecord> records, long now) {
+        getStore().advance(records, now);
+    }
+
+    /**
+     * Intent which gets called when the alarm fires.
+     *
+     * @param receiver
+     *      Receiver to handle the trigger event
+     */
+    private PendingIntent getPendingIntent(Class<?> receiver) {
+        Intent intent = new Intent(context, receiver)
+                .setAction(ACTION_DUE);
+
+        return PendingIntent.getBroadcast(
+                context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    /**
+     * Process-wide store of the persisted notifications.
+     */
+    private NotificationStore getStore() {
+        return NotificationStore.getInstance(context);
+    }
+
+    /**
+     * Alarm manager for the application.
+     */
+    private AlarmManager getAlarmMgr() {
+        return (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+    }
+
+}
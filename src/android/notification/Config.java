@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package com.commontime.plugin.notification.notification;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Plugin wide settings which can be changed from JS. The settings are
+ * persisted as they are needed by the receivers as well, which might run
+ * in a fresh process after the device has been rebooted.
+ */
+public class Config {
+
+    // Key for private preferences
+    private static final String PREF_KEY = "NotificationConfig";
+
+    // Key of the scheduler setting
+    private static final String SCHEDULER = "scheduler";
+
+    // Registers one alarm per notification
+    public static final String SCHEDULER_DEFAULT = "default";
+
+    // Registers one alarm for the earliest due notification
+    public static final String SCHEDULER_COALESCING = "coalescing";
+
+    // Registers alarms for the nearest notifications only
+    public static final String SCHEDULER_WINDOWED = "windowed";
+
+    // Key of the max number of alarms of the windowed scheduler
+    private static final String WINDOW_SIZE = "windowSize";
+
+    // Key of the time range in seconds covered by the windowed scheduler
+    private static final String WINDOW_HORIZON = "windowHorizon";
+
+    // Key of the intent payload setting
+    private static final String PAYLOAD = "payload";
+
+    // Intents carry the full options
+    public static final String PAYLOAD_OPTIONS = "options";
+
+    // Intents carry the notification ID only
+    public static final String PAYLOAD_ID = "id";
+
+    // Key of the max number of events delivered to JS at once
+    private static final String EVENT_BATCH_SIZE = "eventBatchSize";
+
+    // Key of the time in milliseconds events get collected before delivery
+    private static final String EVENT_FLUSH_INTERVAL = "eventFlushInterval";
+
+    // Key of the max number of events buffered for JS
+    private static final String EVENT_QUEUE_SIZE = "eventQueueSize";
+
+    // Key of the policy applied if the event buffer is full
+    private static final String EVENT_OVERFLOW = "eventOverflow";
+
+    // Drops the oldest event if the buffer is full
+    public static final String OVERFLOW_DROP_OLDEST = "dropOldest";
+
+    // Drops the oldest event of the same type and notification if any
+    public static final String OVERFLOW_COLLAPSE = "collapse";
+
+    // Key of the setting to write buffered events to a journal file
+    private static final String EVENT_JOURNAL = "eventJournal";
+
+    // Default max number of events buffered for JS
+    public static final int DEFAULT_EVENT_QUEUE_SIZE = 1000;
+
+    // Default max number of events delivered at once
+    private static final int DEFAULT_EVENT_BATCH_SIZE = 50;
+
+    // Default time events get collected, about one frame
+    private static final long DEFAULT_EVENT_FLUSH_INTERVAL = 16;
+
+    // Default max number of alarms of the windowed scheduler
+    private static final int DEFAULT_WINDOW_SIZE = 50;
+
+    // Default time range covered by the windowed scheduler, 7 days
+    private static final long DEFAULT_WINDOW_HORIZON = 7 * 24 * 60 * 60;
+
+    // Shared private preferences holding the settings
+    private final SharedPreferences prefs;
+
+    /**
+     * Constructor
+     *
+     * @param context
+     *      Application context
+     */
+    private Config(Context context) {
+        this.prefs = context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Static method to retrieve class instance.
+     *
+     * @param context
+     *      Application context
+     */
+    public static Config getInstance(Context context) {
+        return new Config(context);
+    }
+
+    /**
+     * The scheduler mode, one of default, coalescing or windowed.
+     */
+    public String getScheduler() {
+        return prefs.getString(SCHEDULER, SCHEDULER_DEFAULT);
+    }
+
+    /**
+     * If only one alarm for the earliest due notification is registered.
+     */
+    public boolean isCoalescing() {
+        return SCHEDULER_COALESCING.equals(getScheduler());
+    }
+
+    /**
+     * If alarms are registered only for the nearest notifications.
+     */
+    public boolean isWindowed() {
+        return SCHEDULER_WINDOWED.equals(getScheduler());
+    }
+
+    /**
+     * Max number of alarms registered by the windowed scheduler.
+     */
+    public int getWindowSize() {
+        return prefs.getInt(WINDOW_SIZE, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Time range in milliseconds covered by the windowed scheduler.
+     * Notifications triggering later get their alarm once they enter the
+     * range.
+     */
+    public long getWindowHorizon() {
+        return prefs.getLong(WINDOW_HORIZON, DEFAULT_WINDOW_HORIZON) * 1000;
+    }
+
+    /**
+     * If intents carry the notification ID only and the receivers load the
+     * options from the store.
+     */
+    public boolean isIdOnly() {
+        return PAYLOAD_ID.equals(prefs.getString(PAYLOAD, PAYLOAD_OPTIONS));
+    }
+
+    /**
+     * Max number of events delivered to JS with a single call.
+     */
+    public int getEventBatchSize() {
+        return prefs.getInt(EVENT_BATCH_SIZE, DEFAULT_EVENT_BATCH_SIZE);
+    }
+
+    /**
+     * Time in milliseconds events get collected before they are delivered
+     * to JS together.
+     */
+    public long getEventFlushInterval() {
+        return prefs.getLong(EVENT_FLUSH_INTERVAL, DEFAULT_EVENT_FLUSH_INTERVAL);
+    }
+
+    /**
+     * Max number of events buffered until JS is ready to receive them.
+     */
+    public int getEventQueueSize() {
+        return prefs.getInt(EVENT_QUEUE_SIZE, DEFAULT_EVENT_QUEUE_SIZE);
+    }
+
+    /**
+     * If a full event buffer drops the oldest event of the same type and
+     * notification instead of the oldest one.
+     */
+    public boolean isEventCollapsing() {
+        return OVERFLOW_COLLAPSE.equals(
+                prefs.getString(EVENT_OVERFLOW, OVERFLOW_DROP_OLDEST));
+    }
+
+    /**
+     * If buffered events get written to a journal file, so that they
+     * survive process death.
+     */
+    public boolean isEventJournaled() {
+        return prefs.getBoolean(EVENT_JOURNAL, false);
+    }
+
+    /**
+     * Apply the settings passed by JS. Unknown keys are ignored.
+     *
+     * @param settings
+     *      JSON object with the settings to change
+     */
+    public void update(JSONObject settings) {
+        SharedPreferences.Editor editor = prefs.edit();
+
+        if (settings.has(SCHEDULER)) {
+            String mode = settings.optString(SCHEDULER);
+
+            if (SCHEDULER_COALESCING.equals(mode)
+                    || SCHEDULER_WINDOWED.equals(mode)) {
+                editor.putString(SCHEDULER, mode);
+            } else {
+                editor.putString(SCHEDULER, SCHEDULER_DEFAULT);
+            }
+        }
+
+        if (settings.has(PAYLOAD)) {
+            String payload = settings.optString(PAYLOAD);
+
+            editor.putString(PAYLOAD, PAYLOAD_ID.equals(payload)
+                    ? PAYLOAD_ID : PAYLOAD_OPTIONS);
+        }
+
+        if (settings.optInt(WINDOW_SIZE, 0) > 0) {
+            editor.putInt(WINDOW_SIZE, settings.optInt(WINDOW_SIZE));
+        }
+
+        if (settings.optLong(WINDOW_HORIZON, 0) > 0) {
+            editor.putLong(WINDOW_HORIZON, settings.optLong(WINDOW_HORIZON));
+        }
+
+        if (settings.optInt(EVENT_BATCH_SIZE, 0) > 0) {
+            editor.putInt(EVENT_BATCH_SIZE, settings.optInt(EVENT_BATCH_SIZE));
+        }
+
+        if (settings.optLong(EVENT_FLUSH_INTERVAL, -1) >= 0) {
+            editor.putLong(EVENT_FLUSH_INTERVAL, settings.optLong(EVENT_FLUSH_INTERVAL));
+        }
+
+        if (settings.optInt(EVENT_QUEUE_SIZE, 0) > 0) {
+            editor.putInt(EVENT_QUEUE_SIZE, settings.optInt(EVENT_QUEUE_SIZE));
+        }
+
+        if (settings.has(EVENT_OVERFLOW)) {
+            String policy = settings.optString(EVENT_OVERFLOW);
+
+            editor.putString(EVENT_OVERFLOW, OVERFLOW_COLLAPSE.equals(policy)
+                    ? OVERFLOW_COLLAPSE : OVERFLOW_DROP_OLDEST);
+        }
+
+        if (settings.has(EVENT_JOURNAL)) {
+            editor.putBoolean(EVENT_JOURNAL, settings.optBoolean(EVENT_JOURNAL));
+        }
+
+        if (Build.VERSION.SDK_INT < 9) {
+            editor.commit();
+        } else {
+            editor.apply();
+        }
+    }
+
+    /**
+     * Encode settings to JSON.
+     */
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+
+        try {
+            json.put(SCHEDULER, getScheduler());
+            json.put(PAYLOAD, isIdOnly() ? PAYLOAD_ID : PAYLOAD_OPTIONS);
+            json.put(WINDOW_SIZE, getWindowSize());
+            json.put(WINDOW_HORIZON, getWindowHorizon() / 1000);
+            json.put(EVENT_BATCH_SIZE, getEventBatchSize());
+            json.put(EVENT_FLUSH_INTERVAL, getEventFlushInterval());
+            json.put(EVENT_QUEUE_SIZE, getEventQueueSize());
+            json.put(EVENT_OVERFLOW, isEventCollapsing()
+                    ? OVERFLOW_COLLAPSE : OVERFLOW_DROP_OLDEST);
+            json.put(EVENT_JOURNAL, isEventJournaled());
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+
+        return json;
+    }
+
+}
@@ -25,19 +25,16 @@ package com.commontime.plugin.notification.notification;
 
 import android.app.NotificationManager;
 import android.content.Context;
-import android.content.SharedPreferences;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-
-import static com.commontime.plugin.notification.notification.NotificationWrapper.PREF_KEY;
 
 /**
  * Central way to access all or single local notifications set by specific
@@ -46,6 +43,12 @@ import static com.commontime.plugin.notification.notification.NotificationWrappe
  */
 public class Manager {
 
+    // Page size if none is given
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    // Max page size to bound the size of a single result
+    private static final int MAX_PAGE_SIZE = 1000;
+
     // Context passed through constructor and used for notification builder.
     private Context context;
 
@@ -78,7 +81,7 @@ public class Manager {
      *      Receiver to handle the trigger event
      */
     public NotificationWrapper schedule (JSONObject options, Class<?> receiver) {
-        return schedule(new Options(context).parse(options), receiver);
+        return schedule(new Options(context, options), receiver);
     }
 
     /**
@@ -95,10 +98,47 @@ public class Manager {
                 .build();
 
         notification.schedule();
+        AssetPrefetcher.prefetch(Collections.singletonList(notification));
 
         return notification;
     }
 
+    /**
+     * Schedule local notifications specified by JSON objects. All
+     * notifications are persisted within a single transaction before any
+     * alarm gets registered. If the transaction fails, none of them is
+     * scheduled.
+     *
+     * @param options
+     *      JSON objects with set of options
+     * @param receiver
+     *      Receiver to handle the trigger event
+     */
+    public List<NotificationWrapper> schedule (List<JSONObject> options,
+                                               Class<?> receiver) {
+
+        List<NotificationWrapper> notifications = new ArrayList<NotificationWrapper>();
+        NotificationStore.Batch batch = getStore().batch();
+
+        for (JSONObject dict : options) {
+            NotificationWrapper notification =
+                    new Builder(new Options(context, dict))
+                            .setTriggerReceiver(receiver)
+                            .build();
+
+            batch.put(NotificationRecord.from(notification.getOptions()));
+            notifications.add(notification);
+        }
+
+        batch.commit();
+
+        NotificationWrapper.scheduleAlarms(context, notifications, receiver);
+
+        AssetPrefetcher.prefetch(notifications);
+
+        return notifications;
+    }
+
     /**
      * Clear local notification specified by ID.
      *
@@ -127,6 +167,54 @@ public class Manager {
         return schedule(options, receiver);
     }
 
+    /**
+     * Update local notifications specified by the IDs of the JSON objects.
+     * All updates are persisted within a single transaction before any
+     * alarm gets replaced. Unknown IDs are skipped.
+     *
+     * @param updates
+     *      JSON objects with notification options including their IDs
+     * @param receiver
+     *      Receiver to handle the trigger event
+     */
+    public List<NotificationWrapper> update (List<JSONObject> updates,
+                                             Class<?> receiver) {
+
+        List<NotificationWrapper> notifications = new ArrayList<NotificationWrapper>();
+        NotificationStore.Batch batch = getStore().batch();
+        long now = new Date().getTime();
+
+        for (JSONObject update : updates) {
+            NotificationRecord record = getRecord(update.optInt("id", 0));
+            JSONObject options = record != null ? record.getOptions() : null;
+
+            if (options == null)
+                continue;
+
+            mergeJSONObjects(options, update);
+
+            try {
+                options.putOpt("updatedAt", now);
+            } catch (JSONException ignore) {}
+
+            NotificationWrapper notification =
+                    new Builder(new Options(context, options))
+                            .setTriggerReceiver(receiver)
+                            .build();
+
+            batch.put(NotificationRecord.from(notification.getOptions()));
+            notifications.add(notification);
+        }
+
+        batch.commit();
+
+        NotificationWrapper.rescheduleAlarms(context, notifications, receiver);
+
+        AssetPrefetcher.prefetch(notifications);
+
+        return notifications;
+    }
+
     /**
      * Clear local notification specified by ID.
      *
@@ -159,6 +247,55 @@ public class Manager {
         return notification;
     }
 
+    /**
+     * Cancel local notifications specified by ID. All notifications are
+     * removed within a single transaction before any alarm gets
+     * unregistered. Unknown IDs are skipped. Does not build the
+     * notifications.
+     *
+     * @param ids
+     *      The notification IDs
+     *
+     * @return
+     *      The records of the canceled notifications
+     */
+    public List<NotificationRecord> cancel (List<Integer> ids) {
+        List<NotificationRecord> records = new ArrayList<NotificationRecord>();
+
+        for (int id : ids) {
+            NotificationRecord record = getRecord(id);
+
+            if (record != null) {
+                records.add(record);
+            }
+        }
+
+        return cancelAll(records);
+    }
+
+    /**
+     * Cancel the local notifications within a single transaction. The
+     * alarms and intents get released by ID.
+     *
+     * @param records
+     *      The records of the notifications to cancel
+     */
+    private List<NotificationRecord> cancelAll (List<NotificationRecord> records) {
+        NotificationStore.Batch batch = getStore().batch();
+        List<Integer> ids = new ArrayList<Integer>();
+
+        for (NotificationRecord record : records) {
+            batch.remove(record.getId());
+            ids.add(record.getId());
+        }
+
+        batch.commit();
+
+        NotificationWrapper.cancelAlarms(context, ids, null);
+
+        return records;
+    }
+
     /**
      * Clear all local notifications.
      */
@@ -176,27 +313,121 @@ public class Manager {
      * Cancel all local notifications.
      */
     public void cancelAll () {
-        List<NotificationWrapper> notifications = getAll();
+        cancelAll(getStore().getAll());
+        getNotMgr().cancelAll();
+    }
 
-        for (NotificationWrapper notification : notifications) {
-            notification.cancel();
+    /**
+     * Apply the settings passed by JS. If the scheduler mode changes, the
+     * alarms of all notifications are moved to the new scheduler.
+     *
+     * @param settings
+     *      JSON object with the settings to change
+     * @param receiver
+     *      Receiver to handle the trigger event
+     */
+    public void configure (JSONObject settings, Class<?> receiver) {
+        Config config = Config.getInstance(context);
+        String mode   = config.getScheduler();
+
+        config.update(settings);
+
+        if (mode.equals(config.getScheduler())) {
+            if (config.isWindowed()) {
+                getWindow().slide(receiver);
+            }
+            return;
         }
 
-        getNotMgr().cancelAll();
+        if (Config.SCHEDULER_COALESCING.equals(mode)) {
+            CoalescingScheduler.getInstance(context).disarm(receiver);
+        } else if (Config.SCHEDULER_WINDOWED.equals(mode)) {
+            getWindow().clear(receiver);
+        } else {
+            for (NotificationWrapper notification : getAll()) {
+                notification.unregisterAlarm();
+            }
+        }
+
+        if (config.isCoalescing()) {
+            getStore().refresh(System.currentTimeMillis());
+            CoalescingScheduler.getInstance(context).arm(receiver);
+        } else if (config.isWindowed()) {
+            getStore().refresh(System.currentTimeMillis());
+            getWindow().slide(receiver);
+        } else {
+            for (NotificationWrapper notification : getAll()) {
+                if (notification.isScheduled()) {
+                    notification.registerAlarm();
+                }
+            }
+        }
     }
 
     /**
-     * All local notifications IDs.
+     * Create the notification channel unless it exists already.
+     *
+     * @param channel
+     *      JSON object with the channel settings like id, name, importance,
+     *      sound, vibrate and group
+     *
+     * @return
+     *      false if the settings are invalid
      */
-    public List<Integer> getIds() {
-        Set<String> keys = getPrefs().getAll().keySet();
-        ArrayList<Integer> ids = new ArrayList<Integer>();
+    public boolean createChannel (JSONObject channel) {
+        return ChannelRegistry.getInstance(context).register(channel);
+    }
 
-        for (String key : keys) {
-            ids.add(Integer.parseInt(key));
-        }
+    /**
+     * Compile and register the categories, so that notifications can
+     * reference them by identifier.
+     *
+     * @param categories
+     *      JSON objects with identifier and actions
+     *
+     * @return
+     *      Number of registered categories
+     */
+    public int registerCategories (JSONArray categories) {
+        return getCategories().register(categories);
+    }
 
-        return ids;
+    /**
+     * Definitions of all registered categories.
+     */
+    public JSONArray getRegisteredCategories () {
+        return getCategories().toJSON();
+    }
+
+    /**
+     * Unregister the categories.
+     *
+     * @param identifiers
+     *      The category identifiers
+     */
+    public void removeRegisteredCategories (List<String> identifiers) {
+        getCategories().remove(identifiers);
+    }
+
+    /**
+     * Unregister all categories.
+     */
+    public void clearRegisteredCategories () {
+        getCategories().clear();
+    }
+
+    /**
+     * Registry of the notification categories.
+     */
+    private CategoryRegistry getCategories () {
+        return CategoryRegistry.getInstance(context);
+    }
+
+    /**
+     * All local notifications IDs.
+     */
+    public List<Integer> getIds() {
+        return getStore().getIds();
     }
 
     /**
@@ -206,13 +437,11 @@ public class Manager {
      *      The notification life cycle type
      */
     public List<Integer> getIdsByType(NotificationWrapper.Type type) {
-        List<NotificationWrapper> notifications = getAll();
+        List<NotificationRecord> records = getRecordsByType(type);
         ArrayList<Integer> ids = new ArrayList<Integer>();
 
-        for (NotificationWrapper notification : notifications) {
-            if (notification.getType() == type) {
-                ids.add(notification.getId());
-            }
+        for (NotificationRecord record : records) {
+            ids.add(record.getId());
         }
 
         return ids;
@@ -252,19 +481,7 @@ public class Manager {
      *      The notification life cycle type
      */
     public List<NotificationWrapper> getByType(NotificationWrapper.Type type) {
-        List<NotificationWrapper> notifications = getAll();
-        ArrayList<NotificationWrapper> list = new ArrayList<NotificationWrapper>();
-
-        if (type == NotificationWrapper.Type.ALL)
-            return notifications;
-
-        for (NotificationWrapper notification : notifications) {
-            if (notification.getType() == type) {
-                list.add(notification);
-            }
-        }
-
-        return list;
+        return getByIds(getIdsByType(type));
     }
 
     /**
@@ -280,10 +497,10 @@ public class Manager {
         ArrayList<NotificationWrapper> notifications = new ArrayList<NotificationWrapper>();
 
         for (int id : ids) {
-            NotificationWrapper notification = get(id);
+            NotificationRecord record = getRecord(id);
 
-            if (notification != null && notification.isScheduled()) {
-                notifications.add(notification);
+            if (record != null && record.isScheduled()) {
+                notifications.add(get(id));
             }
         }
 
@@ -297,7 +514,7 @@ public class Manager {
      *      NotificationWrapper ID
      */
     public boolean exist (int id) {
-        return get(id) != null;
+        return getStore().contains(id);
     }
 
     /**
@@ -309,16 +526,16 @@ public class Manager {
      *      NotificationWrapper type
      */
     public boolean exist (int id, NotificationWrapper.Type type) {
-        NotificationWrapper notification = get(id);
+        NotificationRecord record = getRecord(id);
 
-        return notification != null && notification.getType() == type;
+        return record != null && record.getType() == type;
     }
 
     /**
      * List of properties from all local notifications.
      */
     public List<JSONObject> getOptions() {
-        return getOptionsById(getIds());
+        return toOptions(getStore().getAll(), null);
     }
 
     /**
@@ -328,17 +545,7 @@ public class Manager {
      *      Set of notification IDs
      */
     public List<JSONObject> getOptionsById(List<Integer> ids) {
-        ArrayList<JSONObject> options = new ArrayList<JSONObject>();
-
-        for (int id : ids) {
-            NotificationWrapper notification = get(id);
-
-            if (notification != null) {
-                options.add(notification.getOptions().getDict());
-            }
-        }
-
-        return options;
+        return getOptionsBy(NotificationWrapper.Type.ALL, ids);
     }
 
     /**
@@ -348,14 +555,21 @@ public class Manager {
      *      The notification life cycle type
      */
     public List<JSONObject> getOptionsByType(NotificationWrapper.Type type) {
-        ArrayList<JSONObject> options = new ArrayList<JSONObject>();
-        List<NotificationWrapper> notifications = getByType(type);
-
-        for (NotificationWrapper notification : notifications) {
-            options.add(notification.getOptions().getDict());
-        }
+        return getOptionsByType(type, null);
+    }
 
-        return options;
+    /**
+     * List of properties from all local notifications from given type.
+     * Only the given fields get extracted.
+     *
+     * @param type
+     *      The notification life cycle type
+     * @param fields
+     *      The fields to return or null for all
+     */
+    public List<JSONObject> getOptionsByType(NotificationWrapper.Type type,
+                                             List<String> fields) {
+        return toOptions(getRecordsByType(type), fields);
     }
 
     /**
@@ -369,22 +583,164 @@ public class Manager {
      */
     public List<JSONObject> getOptionsBy(NotificationWrapper.Type type,
                                          List<Integer> ids) {
+        return getOptionsBy(type, ids, null);
+    }
 
-        if (type == NotificationWrapper.Type.ALL)
-            return getOptionsById(ids);
+    /**
+     * List of properties from local notifications with matching ID from
+     * given type. Only the given fields get extracted.
+     *
+     * @param type
+     *      The notification life cycle type
+     * @param ids
+     *      Set of notification IDs
+     * @param fields
+     *      The fields to return or null for all
+     */
+    public List<JSONObject> getOptionsBy(NotificationWrapper.Type type,
+                                         List<Integer> ids, List<String> fields) {
 
-        ArrayList<JSONObject> options = new ArrayList<JSONObject>();
-        List<NotificationWrapper> notifications = getByIds(ids);
+        ArrayList<NotificationRecord> records = new ArrayList<NotificationRecord>();
 
-        for (NotificationWrapper notification : notifications) {
-            if (notification.getType() == type) {
-                options.add(notification.getOptions().getDict());
+        for (int id : ids) {
+            NotificationRecord record = getRecord(id);
+
+            if (record != null && record.isOfType(type)) {
+                records.add(record);
             }
         }
 
+        return toOptions(records, fields);
+    }
+
+    /**
+     * One page of properties from local notifications from given type,
+     * ordered by ID or by next trigger time. Only the records of the page
+     * get decoded, the full result is never put together.
+     *
+     * @param type
+     *      The notification life cycle type
+     * @param order
+     *      One of id or trigger
+     * @param cursor
+     *      Cursor returned with the former page or null for the first page
+     * @param limit
+     *      Max number of notifications of the page
+     * @param fields
+     *      The fields to return or null for all
+     *
+     * @return
+     *      The notifications together with the cursor of the next page or
+     *      null if the cursor is invalid. The cursor of the next page is
+     *      null after the last page.
+     */
+    public JSONObject getOptionsPage(NotificationWrapper.Type type, String order,
+                                     String cursor, int limit,
+                                     List<String> fields) {
+
+        PageCursor position = cursor == null ? PageCursor.first(order)
+                : PageCursor.decode(cursor);
+
+        if (position == null)
+            return null;
+
+        if (limit <= 0) {
+            limit = DEFAULT_PAGE_SIZE;
+        }
+
+        limit = Math.min(limit, MAX_PAGE_SIZE);
+
+        List<NotificationRecord> records = getStore().getPage(type, position, limit);
+        JSONObject page = new JSONObject();
+        Object next = JSONObject.NULL;
+
+        if (records.size() == limit) {
+            next = position.next(records.get(records.size() - 1)).encode();
+        }
+
+        try {
+            page.put("notifications", new JSONArray(toOptions(records, fields)));
+            page.put("cursor", next);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+
+        return page;
+    }
+
+    /**
+     * List of properties from local notifications which match the filter.
+     * The filter gets compiled once and evaluated natively, so that only
+     * the matches get decoded and returned.
+     *
+     * @param spec
+     *      The filter like { type: 'scheduled', at: { from: 0, to: 0 },
+     *      repeating: false, where: { 'data.patientId': 'X' } }
+     *
+     * @return
+     *      null if the filter is invalid
+     */
+    public List<JSONObject> query (JSONObject spec) {
+        NotificationFilter filter = NotificationFilter.compile(spec);
+
+        if (filter == null)
+            return null;
+
+        List<String> fields = filter.getFields();
+        List<JSONObject> options = new ArrayList<JSONObject>();
+        long now = System.currentTimeMillis();
+
+        for (NotificationRecord record : filter.getCandidates(getStore())) {
+
+            if (!filter.matches(record, now))
+                continue;
+
+            JSONObject dict = record.getOptions();
+
+            if (dict == null || !filter.matches(dict))
+                continue;
+
+            options.add(fields != null ? project(dict, fields) : dict);
+        }
+
         return options;
     }
 
+    /**
+     * Record of the local notification with matching ID. Does not build
+     * the notification.
+     *
+     * @param id
+     *      NotificationWrapper ID
+     */
+    public NotificationRecord getRecord(int id) {
+        return getStore().get(id);
+    }
+
+    /**
+     * Records of all local notifications from given type. Does not build
+     * the notifications.
+     *
+     * @param type
+     *      The notification life cycle type
+     */
+    public List<NotificationRecord> getRecordsByType(NotificationWrapper.Type type) {
+        return getStore().getByType(type);
+    }
+
+    /**
+     * Records of all local notifications which trigger within the given
+     * time range. Does not build the notifications.
+     *
+     * @param from
+     *      Start of the range in milliseconds, inclusive
+     * @param to
+     *      End of the range in milliseconds, exclusive
+     */
+    public List<NotificationRecord> getRecordsBetween(long from, long to) {
+        return getStore().getBetween(from, to);
+    }
+
     /**
      * Get existent local notification.
      *
@@ -392,27 +748,73 @@ public class Manager {
      *      NotificationWrapper ID
      */
     public NotificationWrapper get(int id) {
-        Map<String, ?> alarms = getPrefs().getAll();
-        String notId          = Integer.toString(id);
-        JSONObject options;
+        NotificationRecord record = getRecord(id);
 
-        if (!alarms.containsKey(notId))
+        if (record == null)
             return null;
 
+        JSONObject options = record.getOptions();
 
-        try {
-            String json = alarms.get(notId).toString();
-            options = new JSONObject(json);
-        } catch (JSONException e) {
-            e.printStackTrace();
+        if (options == null)
             return null;
-        }
 
         Builder builder = new Builder(context, options);
 
         return builder.build();
     }
 
+    /**
+     * Decoded options of the records.
+     *
+     * @param records
+     *      Set of notification records
+     * @param fields
+     *      The fields to keep or null for all
+     */
+    private List<JSONObject> toOptions (List<NotificationRecord> records,
+                                        List<String> fields) {
+        ArrayList<JSONObject> options = new ArrayList<JSONObject>();
+
+        for (NotificationRecord record : records) {
+            JSONObject dict = record.getOptions();
+
+            if (dict == null)
+                continue;
+
+            options.add(fields != null ? project(dict, fields) : dict);
+        }
+
+        return options;
+    }
+
+    /**
+     * Copy of the options with the given fields only. Missing fields are
+     * left out.
+     *
+     * @param dict
+     *      The decoded options
+     * @param fields
+     *      The fields to keep
+     */
+    private JSONObject project (JSONObject dict, List<String> fields) {
+        JSONObject options = new JSONObject();
+
+        for (String field : fields) {
+            Object value = dict.opt(field);
+
+            if (value == null)
+                continue;
+
+            try {
+                options.put(field, value);
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return options;
+    }
+
     /**
      * Merge two JSON objects.
      *
@@ -438,10 +840,17 @@ public class Manager {
     }
 
     /**
-     * Shared private preferences for the application.
+     * Scheduler which registers the alarms for the nearest notifications.
+     */
+    private WindowedScheduler getWindow () {
+        return WindowedScheduler.getInstance(context);
+    }
+
+    /**
+     * Process-wide store of the persisted notifications.
      */
-    private SharedPreferences getPrefs () {
-        return context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+    private NotificationStore getStore () {
+        return NotificationStore.getInstance(context);
     }
 
     /**
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package com.commontime.plugin.notification.notification;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide counters to measure the work done by the plugin, like
+ * the number of alarms registered with the OS or the number of wakeups
+ * caused by them.
+ */
+public final class Metrics {
+
+    // Alarms registered with the AlarmManager
+    private static final AtomicLong alarmsRegistered = new AtomicLong();
+
+    // Alarms removed from the AlarmManager
+    private static final AtomicLong alarmsCanceled = new AtomicLong();
+
+    // Alarms received by the trigger receiver
+    private static final AtomicLong wakeups = new AtomicLong();
+
+    // Notifications triggered by the received alarms
+    private static final AtomicLong triggers = new AtomicLong();
+
+    // Finished restores after a reboot
+    private static final AtomicLong restores = new AtomicLong();
+
+    // Notifications restored after a reboot
+    private static final AtomicLong restoredNotifications = new AtomicLong();
+
+    // Duration of the last restore in milliseconds
+    private static final AtomicLong lastRestoreDuration = new AtomicLong();
+
+    // Duration of all restores in milliseconds
+    private static final AtomicLong restoreDuration = new AtomicLong();
+
+    // Large icons found in the bitmap cache
+    private static final AtomicLong iconCacheHits = new AtomicLong();
+
+    // Large icons which had to be decoded
+    private static final AtomicLong iconCacheMisses = new AtomicLong();
+
+    // Notifications whose assets have been prefetched
+    private static final AtomicLong prefetches = new AtomicLong();
+
+    // Notifications shown by the trigger receiver
+    private static final AtomicLong notifies = new AtomicLong();
+
+    // Time from receiving the alarm until shown in milliseconds, summed up
+    private static final AtomicLong notifyLatency = new AtomicLong();
+
+    // Time from receiving the alarm until shown in milliseconds, the last
+    private static final AtomicLong lastNotifyLatency = new AtomicLong();
+
+    // Time from receiving the alarm until shown in milliseconds, the max
+    private static final AtomicLong maxNotifyLatency = new AtomicLong();
+
+    // Number of events fired to JS
+    private static final AtomicLong events = new AtomicLong();
+
+    // Number of JS calls which delivered the events
+    private static final AtomicLong eventFlushes = new AtomicLong();
+
+    // Number of events delivered to JS
+    private static final AtomicLong flushedEvents = new AtomicLong();
+
+    // Number of deliveries evaluated as JS code for lack of a subscription
+    private static final AtomicLong eventEvaluations = new AtomicLong();
+
+    // Number of events dropped because the buffer was full
+    private static final AtomicLong eventsDropped = new AtomicLong();
+
+    /**
+     * Not meant to be instantiated.
+     */
+    private Metrics() {}
+
+    /**
+     * Count an alarm registered with the AlarmManager.
+     */
+    static void alarmRegistered() {
+        alarmsRegistered.incrementAndGet();
+    }
+
+    /**
+     * Count an alarm removed from the AlarmManager.
+     */
+    static void alarmCanceled() {
+        alarmsCanceled.incrementAndGet();
+    }
+
+    /**
+     * Count an alarm received by the trigger receiver.
+     */
+    static void wakeup() {
+        wakeups.incrementAndGet();
+    }
+
+    /**
+     * Count a triggered notification.
+     */
+    static void trigger() {
+        triggers.incrementAndGet();
+    }
+
+    /**
+     * Count a finished restore.
+     *
+     * @param count
+     *      The number of restored notifications
+     * @param duration
+     *      Duration of the restore in milliseconds
+     */
+    static void restored(int count, long duration) {
+        restores.incrementAndGet();
+        restoredNotifications.addAndGet(count);
+        lastRestoreDuration.set(duration);
+        restoreDuration.addAndGet(duration);
+    }
+
+    /**
+     * Count a large icon found in the bitmap cache.
+     */
+    static void iconCacheHit() {
+        iconCacheHits.incrementAndGet();
+    }
+
+    /**
+     * Count a large icon missing in the bitmap cache.
+     */
+    static void iconCacheMiss() {
+        iconCacheMisses.incrementAndGet();
+    }
+
+    /**
+     * Count a notification whose assets have been prefetched.
+     */
+    static void prefetched() {
+        prefetches.incrementAndGet();
+    }
+
+    /**
+     * Count a notification shown by the trigger receiver.
+     *
+     * @param latency
+     *      Time from receiving the alarm until shown in milliseconds
+     */
+    static void notified(long latency) {
+        long max;
+
+        notifies.incrementAndGet();
+        notifyLatency.addAndGet(latency);
+        lastNotifyLatency.set(latency);
+
+        do {
+            max = maxNotifyLatency.get();
+        } while (latency > max && !maxNotifyLatency.compareAndSet(max, latency));
+    }
+
+    /**
+     * Count an event fired to JS.
+     */
+    public static void eventFired() {
+        events.incrementAndGet();
+    }
+
+    /**
+     * Count a JS call which delivered events.
+     *
+     * @param count
+     *      Number of delivered events
+     */
+    public static void eventsFlushed(int count) {
+        eventFlushes.incrementAndGet();
+        flushedEvents.addAndGet(count);
+    }
+
+    /**
+     * Count a delivery which was evaluated as JS code by the web view.
+     */
+    public static void eventsEvaluated() {
+        eventEvaluations.incrementAndGet();
+    }
+
+    /**
+     * Count an event dropped because the buffer was full.
+     */
+    public static void eventDropped() {
+        eventsDropped.incrementAndGet();
+    }
+
+    /**
+     * Reset all counters.
+     */
+    public static void reset() {
+        alarmsRegistered.set(0);
+        alarmsCanceled.set(0);
+        wakeups.set(0);
+        triggers.set(0);
+        restores.set(0);
+        restoredNotifications.set(0);
+        lastRestoreDuration.set(0);
+        restoreDuration.set(0);
+        iconCacheHits.set(0);
+        iconCacheMisses.set(0);
+        prefetches.set(0);
+        notifies.set(0);
+        notifyLatency.set(0);
+        lastNotifyLatency.set(0);
+        maxNotifyLatency.set(0);
+        events.set(0);
+        eventFlushes.set(0);
+        flushedEvents.set(0);
+        eventEvaluations.set(0);
+        eventsDropped.set(0);
+    }
+
+    /**
+     * Encode all counters to JSON.
+     */
+    public static JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+
+        try {
+            json.put("alarmsRegistered", alarmsRegistered.get());
+            json.put("alarmsCanceled", alarmsCanceled.get());
+            json.put("wakeups", wakeups.get());
+            json.put("triggers", triggers.get());
+            json.put("restores", restores.get());
+            json.put("restoredNotifications", restoredNotifications.get());
+            json.put("lastRestoreDuration", lastRestoreDuration.get());
+            json.put("restoreDuration", restoreDuration.get());
+            json.put("iconCacheHits", iconCacheHits.get());
+            json.put("iconCacheMisses", iconCacheMisses.get());
+            json.put("prefetches", prefetches.get());
+            json.put("notifies", notifies.get());
+            json.put("notifyLatency", notifyLatency.get());
+            json.put("lastNotifyLatency", lastNotifyLatency.get());
+            json.put("maxNotifyLatency", maxNotifyLatency.get());
+            json.put("events", events.get());
+            json.put("eventFlushes", eventFlushes.get());
+            json.put("flushedEvents", flushedEvents.get());
+            json.put("eventEvaluations", eventEvaluations.get());
+            json.put("eventsDropped", eventsDropped.get());
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+
+        return json;
+    }
+
+}
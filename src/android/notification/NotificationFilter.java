@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package com.commontime.plugin.notification.notification;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled filter of a query passed by JS like
+ * { type: 'scheduled', repeating: false, at: { from: 0, to: 0 },
+ *   where: { 'data.patientId': 'X' }, fields: ['id', 'title'] }.
+ *
+ * The filter gets compiled once per query. The type or the range pick
+ * the candidates through the indexes of the store. A notification is in
+ * the range if any of its occurrences is, computed at query time from
+ * its recurrence rule since the stored next trigger time is not kept
+ * current by every scheduler. The cheap checks on the record go first,
+ * the options get decoded only for the remaining records to check the
+ * field conditions.
+ */
+final class NotificationFilter {
+
+    // Life cycle type of the matching notifications
+    private final NotificationWrapper.Type type;
+
+    // If repeating or one-time notifications match, null for both
+    private final Boolean repeating;
+
+    // Start of the range of the trigger times in ms, inclusive
+    private final long from;
+
+    // End of the range of the trigger times in ms, exclusive
+    private final long to;
+
+    // If the notification has to trigger within the range
+    private final boolean ranged;
+
+    // Field conditions which all have to match
+    private final List<Condition> conditions;
+
+    // Fields to return, null for all
+    private final List<String> fields;
+
+    /**
+     * Constructor
+     *
+     * @param type
+     *      Life cycle type of the matching notifications
+     * @param repeating
+     *      If repeating or one-time notifications match, null for both
+     * @param from
+     *      Start of the range of the trigger times in ms, inclusive
+     * @param to
+     *      End of the range of the trigger times in ms, exclusive
+     * @param ranged
+     *      If the notification has to trigger within the range
+     * @param conditions
+     *      Field conditions which all have to match
+     * @param fields
+     *      Fields to return, null for all
+     */
+    private NotificationFilter(NotificationWrapper.Type type, Boolean repeating,
+                               long from, long to, boolean ranged,
+                               List<Condition> conditions, List<String> fields) {
+        this.type       = type;
+        this.repeating  = repeating;
+        this.from       = from;
+        this.to         = to;
+        this.ranged     = ranged;
+        this.conditions = conditions;
+        this.fields     = fields;
+    }
+
+    /**
+     * Compile the filter passed by JS.
+     *
+     * @param spec
+     *      The filter expression
+     *
+     * @return
+     *      null if the filter is invalid
+     */
+    static NotificationFilter compile(JSONObject spec) {
+        NotificationWrapper.Type type;
+        Boolean repeating = null;
+        long from         = 1;
+        long to           = Long.MAX_VALUE;
+        JSONObject at     = spec.optJSONObject("at");
+        JSONObject where  = spec.optJSONObject("where");
+        JSONArray fields  = spec.optJSONArray("fields");
+        List<Condition> conditions = new ArrayList<Condition>();
+        List<String> projection    = null;
+
+        try {
+            type = NotificationWrapper.Type.valueOf(
+                    spec.optString("type", "all").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        if (spec.has("repeating") && !spec.isNull("repeating")) {
+            repeating = spec.optBoolean("repeating");
+        }
+
+        if (at == null && spec.has("at") || where == null && spec.has("where"))
+            return null;
+
+        if (at != null) {
+            from = at.isNull("from") ? from : Math.max(from, at.optLong("from"));
+            to   = at.isNull("to") ? to : at.optLong("to");
+        }
+
+        if (where != null) {
+            Iterator<String> keys = where.keys();
+
+            while (keys.hasNext()) {
+                String key = keys.next();
+                conditions.add(new Condition(key, where.opt(key)));
+            }
+        }
+
+        if (fields != null) {
+            projection = new ArrayList<String>();
+
+            for (int i = 0; i < fields.length(); i++) {
+                projection.add(fields.optString(i));
+            }
+        }
+
+        return new NotificationFilter(type, repeating, from, to, at != null,
+                conditions, projection);
+    }
+
+    /**
+     * Records which might match. Uses the indexes of the trigger date and
+     * the repeat interval if the filter has a range, else the one of the
+     * trigger date.
+     *
+     * @param store
+     *      The store of the persisted notifications
+     */
+    List<NotificationRecord> getCandidates(NotificationStore store) {
+
+        if (ranged)
+            return store.getTriggeringBetween(from, to);
+
+        return store.getByType(type);
+    }
+
+    /**
+     * If the record matches the type, the recurrence and the range.
+     * Does not decode the options.
+     *
+     * @param record
+     *      The notification record
+     * @param now
+     *      Current time in milliseconds
+     */
+    boolean matches(NotificationRecord record, long now) {
+
+        if (!record.isOfType(type, now))
+            return false;
+
+        if (repeating != null && record.isRepeating() != repeating)
+            return false;
+
+        if (!ranged)
+            return true;
+
+        long time = record.getTriggerTimeFrom(from);
+
+        return time != 0 && time < to;
+    }
+
+    /**
+     * If the options match all field conditions.
+     *
+     * @param options
+     *      The decoded options
+     */
+    boolean matches(JSONObject options) {
+        Map<String, JSONObject> nested = null;
+
+        for (Condition condition : conditions) {
+
+            if (condition.path.length > 1 && nested == null) {
+                nested = new HashMap<String, JSONObject>();
+            }
+
+            if (!condition.matches(options, nested))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Fields to return, null for all.
+     */
+    List<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * Equality condition on a field of the options. Nested fields are
+     * separated by dots like data.patientId, where JSON encoded values
+     * like data get decoded.
+     */
+    private static final class Condition {
+
+        // Keys of the field
+        private final String[] path;
+
+        // Expected value
+        private final Object value;
+
+        /**
+         * Constructor
+         *
+         * @param field
+         *      Keys of the field separated by dots
+         * @param value
+         *      Expected value
+         */
+        Condition(String field, Object value) {
+            this.path  = field.split("\\.");
+            this.value = value;
+        }
+
+        /**
+         * If the field of the options has the expected value.
+         *
+         * @param options
+         *      The decoded options
+         * @param nested
+         *      Decoded nested objects by their key prefix, shared by
+         *      all conditions of the same record
+         */
+        boolean matches(JSONObject options, Map<String, JSONObject> nested) {
+            JSONObject node = options;
+            String prefix   = "";
+
+            for (int i = 0; i < path.length - 1 && node != null; i++) {
+                prefix += path[i] + ".";
+
+                if (nested.containsKey(prefix)) {
+                    node = nested.get(prefix);
+                    continue;
+                }
+
+                node = toObject(node.opt(path[i]));
+                nested.put(prefix, node);
+            }
+
+            Object actual = node != null ? node.opt(path[path.length - 1]) : null;
+
+            return isEqual(actual, value);
+        }
+
+        /**
+         * The value as JSON object, decoded if it's a JSON string.
+         *
+         * @param value
+         *      The value of the field
+         *
+         * @return
+         *      null if the value is not an object
+         */
+        private static JSONObject toObject(Object value) {
+
+            if (value instanceof JSONObject)
+                return (JSONObject) value;
+
+            if (!(value instanceof String) || !((String) value).startsWith("{"))
+                return null;
+
+            try {
+                return new JSONObject((String) value);
+            } catch (JSONException e) {
+                return null;
+            }
+        }
+
+        /**
+         * If both values are equal. Numbers are compared by their value,
+         * all other values by their string. JSON null matches missing
+         * fields too.
+         *
+         * @param actual
+         *      The value of the field
+         * @param expected
+         *      The expected value
+         */
+        private static boolean isEqual(Object actual, Object expected) {
+
+            if (expected == null || expected == JSONObject.NULL)
+                return actual == null || actual == JSONObject.NULL;
+
+            if (actual == null)
+                return false;
+
+            if (actual instanceof Number && expected instanceof Number)
+                return ((Number) actual).doubleValue()
+                        == ((Number) expected).doubleValue();
+
+            return actual.toString().equals(expected.toString());
+        }
+    }
+
+}
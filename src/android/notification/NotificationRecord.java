@@ -0,0 +1,369 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package com.commontime.plugin.notification.notification;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Lightweight read model of a persisted local notification. Holds only the
+ * values needed to answer queries like type or trigger time, together with
+ * the raw options. Unlike the NotificationWrapper it does not require to
+ * build the notification.
+ */
+public class NotificationRecord {
+
+    // The notification ID
+    private final int id;
+
+    // Trigger date in milliseconds
+    private final long triggerTime;
+
+    // Repeat interval like day, week, month or a number of minutes
+    private final String every;
+
+    // Recurrence rule anchored at the trigger date
+    private final Recurrence recurrence;
+
+    // Next time to trigger in milliseconds or 0 if there is none
+    private final long nextTriggerTime;
+
+    // JSON encoded options
+    private final String options;
+
+    /**
+     * Constructor
+     *
+     * @param id
+     *      The notification ID
+     * @param triggerTime
+     *      Trigger date in milliseconds
+     * @param every
+     *      Repeat interval like day, week, month or a number of minutes
+     * @param nextTriggerTime
+     *      Next time to trigger in milliseconds or 0 if there is none
+     * @param options
+     *      JSON encoded options
+     */
+    NotificationRecord(int id, long triggerTime, String every,
+                       long nextTriggerTime, String options) {
+        this(id, triggerTime, every, Recurrence.parse(every, triggerTime),
+                nextTriggerTime, options);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param id
+     *      The notification ID
+     * @param triggerTime
+     *      Trigger date in milliseconds
+     * @param every
+     *      Repeat interval like day, week, month or a number of minutes
+     * @param recurrence
+     *      Recurrence rule parsed from the repeat interval
+     * @param nextTriggerTime
+     *      Next time to trigger in milliseconds or 0 if there is none
+     * @param options
+     *      JSON encoded options
+     */
+    private NotificationRecord(int id, long triggerTime, String every,
+                               Recurrence recurrence, long nextTriggerTime,
+                               String options) {
+        this.id              = id;
+        this.triggerTime     = triggerTime;
+        this.every           = every;
+        this.recurrence      = recurrence;
+        this.nextTriggerTime = nextTriggerTime;
+        this.options         = options;
+    }
+
+    /**
+     * Record of the parsed notification options which are about to be
+     * scheduled. A one-time notification with a trigger date in the past
+     * is due immediately.
+     *
+     * @param options
+     *      Parsed notification options
+     */
+    static NotificationRecord from (Options options) {
+        long triggerTime = options.getTriggerTime();
+        Recurrence rule  = options.getRecurrence();
+        long now         = System.currentTimeMillis();
+        long next        = triggerTime;
+
+        if (rule.isRepeating() && triggerTime < now) {
+            next = rule.getOccurrenceAfter(now - 1);
+        }
+
+        return new NotificationRecord(options.getId(), triggerTime,
+                options.getEvery(), rule, next,
+                options.toString());
+    }
+
+    /**
+     * Record of the JSON encoded notification options.
+     *
+     * @param json
+     *      JSON encoded options
+     *
+     * @return
+     *      null if the JSON could not be parsed
+     */
+    static NotificationRecord from (String json) {
+        JSONObject dict;
+
+        try {
+            dict = new JSONObject(json);
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        long triggerTime = dict.optLong("at", 0) * 1000;
+
+        return new NotificationRecord(dict.optInt("id", 0), triggerTime,
+                dict.optString("every"), 0, json)
+                .refresh(System.currentTimeMillis());
+    }
+
+    /**
+     * Copy of the record with the next trigger time derived from the given
+     * time. One-time notifications with a trigger date in the past are
+     * considered as already triggered.
+     *
+     * @param now
+     *      Current time in milliseconds
+     */
+    NotificationRecord refresh (long now) {
+        long next;
+
+        if (triggerTime >= now) {
+            next = triggerTime;
+        } else if (isRepeating()) {
+            next = getTriggerTimeAfter(now - 1);
+        } else {
+            next = 0;
+        }
+
+        return withNextTriggerTime(next);
+    }
+
+    /**
+     * Copy of the record with another next trigger time.
+     *
+     * @param time
+     *      Next time to trigger in milliseconds or 0 if there is none
+     */
+    NotificationRecord withNextTriggerTime (long time) {
+
+        if (time == nextTriggerTime)
+            return this;
+
+        return new NotificationRecord(id, triggerTime, every, recurrence,
+                time, options);
+    }
+
+    /**
+     * Get notification ID.
+     */
+    public int getId () {
+        return id;
+    }
+
+    /**
+     * Trigger date in milliseconds.
+     */
+    public long getTriggerTime () {
+        return triggerTime;
+    }
+
+    /**
+     * Nominal repeat interval in milliseconds, like 31 days for a month.
+     */
+    public long getRepeatInterval () {
+        return recurrence.getInterval();
+    }
+
+    /**
+     * Repeat interval like day, week, month or a number of minutes.
+     */
+    String getEvery () {
+        return every;
+    }
+
+    /**
+     * Recurrence rule anchored at the trigger date.
+     */
+    Recurrence getRecurrence () {
+        return recurrence;
+    }
+
+    /**
+     * If it's a repeating notification.
+     */
+    public boolean isRepeating () {
+        return recurrence.isRepeating();
+    }
+
+    /**
+     * If the notification was in the past.
+     */
+    public boolean wasInThePast () {
+        return wasInThePast(System.currentTimeMillis());
+    }
+
+    /**
+     * If the notification was in the past.
+     *
+     * @param now
+     *      Current time in milliseconds
+     */
+    boolean wasInThePast (long now) {
+        return now > triggerTime;
+    }
+
+    /**
+     * Next time to trigger in milliseconds or 0 if there is none.
+     */
+    public long getNextTriggerTime () {
+        return nextTriggerTime;
+    }
+
+    /**
+     * Time of the first trigger after the given time or 0 if the
+     * notification does not trigger anymore.
+     *
+     * @param time
+     *      Time in milliseconds
+     */
+    long getTriggerTimeAfter (long time) {
+        return recurrence.getOccurrenceAfter(time);
+    }
+
+    /**
+     * Time of the first trigger at or after the given time or 0 if the
+     * notification does not trigger anymore. Computed from the recurrence
+     * rule, so that it does not depend on the stored next trigger time.
+     *
+     * @param time
+     *      Time in milliseconds
+     */
+    long getTriggerTimeFrom (long time) {
+
+        if (!isRepeating())
+            return triggerTime >= time ? triggerTime : 0;
+
+        return getTriggerTimeAfter(time - 1);
+    }
+
+    /**
+     * If the notification is scheduled.
+     */
+    public boolean isScheduled () {
+        return isRepeating() || !wasInThePast();
+    }
+
+    /**
+     * If the notification is triggered.
+     */
+    public boolean isTriggered () {
+        return wasInThePast();
+    }
+
+    /**
+     * NotificationWrapper type can be one of pending or scheduled.
+     */
+    public NotificationWrapper.Type getType () {
+        return getType(System.currentTimeMillis());
+    }
+
+    /**
+     * NotificationWrapper type can be one of pending or scheduled.
+     *
+     * @param now
+     *      Current time in milliseconds
+     */
+    NotificationWrapper.Type getType (long now) {
+        return wasInThePast(now) ? NotificationWrapper.Type.TRIGGERED
+                : NotificationWrapper.Type.SCHEDULED;
+    }
+
+    /**
+     * If the record matches the given type.
+     *
+     * @param type
+     *      The notification life cycle type
+     */
+    public boolean isOfType (NotificationWrapper.Type type) {
+        return isOfType(type, System.currentTimeMillis());
+    }
+
+    /**
+     * If the record matches the given type.
+     *
+     * @param type
+     *      The notification life cycle type
+     * @param now
+     *      Current time in milliseconds
+     */
+    boolean isOfType (NotificationWrapper.Type type, long now) {
+        return type == NotificationWrapper.Type.ALL || getType(now) == type;
+    }
+
+    /**
+     * Decoded copy of the options.
+     *
+     * @return
+     *      null if the JSON could not be parsed
+     */
+    public JSONObject getOptions () {
+        try {
+            return new JSONObject(options);
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Options as passed to the JS side, like NotificationWrapper.toJSON.
+     *
+     * @return
+     *      null if the JSON could not be parsed
+     */
+    public JSONObject toJSON () {
+        JSONObject json = getOptions();
+
+        return json != null ? NotificationWrapper.toJSON(json) : null;
+    }
+
+    /**
+     * JSON encoded options.
+     */
+    public String toString () {
+        return options;
+    }
+
+}
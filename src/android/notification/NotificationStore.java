@@ -0,0 +1,402 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package com.commontime.plugin.notification.notification;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Process-wide store of all persisted local notifications. The storage is
+ * read once, afterwards all lookups are served from an in-memory index by
+ * ID. Every change is written through to the storage so that the
+ * notifications survive a restart of the app or device.
+ */
+class NotificationStore {
+
+    // The single instance shared by the whole process
+    private static NotificationStore instance;
+
+    // Backend which persists the records
+    private final Storage storage;
+
+    // Notification records by ID
+    private final Map<Integer, NotificationRecord> index =
+            new LinkedHashMap<Integer, NotificationRecord>();
+
+    /**
+     * Constructor
+     *
+     * @param storage
+     *      Backend which persists the records
+     */
+    NotificationStore(Storage storage) {
+        this.storage = storage;
+
+        for (NotificationRecord record : storage.load()) {
+            index.put(record.getId(), record);
+        }
+    }
+
+    /**
+     * Static method to retrieve the shared instance.
+     *
+     * @param context
+     *      Application context
+     */
+    static synchronized NotificationStore getInstance(Context context) {
+
+        if (instance == null) {
+            Context app   = context.getApplicationContext();
+            Config config = Config.getInstance(app);
+
+            instance = new NotificationStore(new SQLiteStorage(app));
+
+            // The other schedulers advance the notifications they trigger
+            if (!config.isCoalescing() && !config.isWindowed()) {
+                instance.catchUp(System.currentTimeMillis());
+            }
+        }
+
+        return instance;
+    }
+
+    /**
+     * Record of the notification or null if not found.
+     *
+     * @param id
+     *      The notification ID
+     */
+    synchronized NotificationRecord get(int id) {
+        return index.get(id);
+    }
+
+    /**
+     * If a notification with the ID is stored.
+     *
+     * @param id
+     *      The notification ID
+     */
+    synchronized boolean contains(int id) {
+        return index.containsKey(id);
+    }
+
+    /**
+     * IDs of all stored notifications.
+     */
+    synchronized List<Integer> getIds() {
+        return new ArrayList<Integer>(index.keySet());
+    }
+
+    /**
+     * Records of all stored notifications.
+     */
+    synchronized List<NotificationRecord> getAll() {
+        return new ArrayList<NotificationRecord>(index.values());
+    }
+
+    /**
+     * Records of all stored notifications from given type.
+     *
+     * @param type
+     *      The notification life cycle type
+     */
+    synchronized List<NotificationRecord> getByType(NotificationWrapper.Type type) {
+
+        if (type == NotificationWrapper.Type.ALL)
+            return getAll();
+
+        long now = System.currentTimeMillis();
+
+        return getByIds(storage.getIdsByType(type, now));
+    }
+
+    /**
+     * Records of all stored notifications whose next trigger time is within
+     * the range.
+     *
+     * @param from
+     *      Start of the range in milliseconds, inclusive
+     * @param to
+     *      End of the range in milliseconds, exclusive
+     */
+    synchronized List<NotificationRecord> getBetween(long from, long to) {
+        return getByIds(storage.getIdsBetween(from, to));
+    }
+
+    /**
+     * Records of the stored notifications which may trigger within the
+     * range. Repeating notifications need to be checked for an occurrence
+     * within the range, see NotificationRecord.getTriggerTimeFrom.
+     *
+     * @param from
+     *      Start of the range in milliseconds, inclusive
+     * @param to
+     *      End of the range in milliseconds, exclusive
+     */
+    synchronized List<NotificationRecord> getTriggeringBetween(long from, long to) {
+        return getByIds(storage.getIdsTriggeringBetween(from, to));
+    }
+
+    /**
+     * Records of the stored notifications which trigger next from the given
+     * time on, ordered by their next trigger time and ID.
+     *
+     * @param from
+     *      Start of the range in milliseconds, inclusive
+     * @param limit
+     *      Max number of records
+     */
+    synchronized List<NotificationRecord> getNext(long from, int limit) {
+        return getByIds(storage.getNextIds(from, limit));
+    }
+
+    /**
+     * Records of the stored notifications from given type which come after
+     * the cursor, at most one page.
+     *
+     * @param type
+     *      The notification life cycle type
+     * @param cursor
+     *      Position after the former page
+     * @param limit
+     *      Max number of records
+     */
+    synchronized List<NotificationRecord> getPage(NotificationWrapper.Type type,
+                                                  PageCursor cursor, int limit) {
+        long now = System.currentTimeMillis();
+
+        return getByIds(storage.getPageIds(type, now, cursor.isByTriggerTime(),
+                cursor.getTime(), cursor.getId(), limit));
+    }
+
+    /**
+     * Earliest next trigger time of all stored notifications or 0 if none
+     * will trigger.
+     */
+    synchronized long getNextTriggerTime() {
+        return storage.getNextTriggerTime();
+    }
+
+    /**
+     * Add or replace the notification and write it through to disk.
+     *
+     * @param record
+     *      The notification record
+     */
+    synchronized void put(NotificationRecord record) {
+        storage.put(record);
+        index.put(record.getId(), record);
+    }
+
+    /**
+     * Remove the notification and write the change through to disk.
+     *
+     * @param id
+     *      The notification ID
+     */
+    synchronized void remove(int id) {
+
+        if (index.remove(id) == null)
+            return;
+
+        storage.remove(id);
+    }
+
+    /**
+     * Move the next trigger time of the notifications past the given time.
+     * Notifications which have been changed or removed meanwhile are
+     * skipped.
+     *
+     * @param records
+     *      The triggered notifications
+     * @param now
+     *      Current time in milliseconds
+     */
+    synchronized void advance(List<NotificationRecord> records, long now) {
+        Batch batch = batch();
+
+        for (NotificationRecord record : records) {
+            if (index.get(record.getId()) == record) {
+                batch.put(record.withNextTriggerTime(
+                        record.getTriggerTimeAfter(now)));
+            }
+        }
+
+        batch.commit();
+    }
+
+    /**
+     * Derive the next trigger time of all notifications from the given
+     * time. One-time notifications from the past won't trigger anymore.
+     *
+     * @param now
+     *      Current time in milliseconds
+     */
+    synchronized void refresh(long now) {
+        Batch batch = batch();
+
+        for (NotificationRecord record : index.values()) {
+            batch.put(record.refresh(now));
+        }
+
+        batch.commit();
+    }
+
+    /**
+     * Derive the next trigger time of the notifications whose next trigger
+     * time has passed, e.g. while the process was not running. Triggered
+     * one-time notifications won't trigger anymore.
+     *
+     * @param now
+     *      Current time in milliseconds
+     */
+    synchronized void catchUp(long now) {
+        Batch batch = batch();
+
+        for (NotificationRecord record : index.values()) {
+            long time = record.getNextTriggerTime();
+
+            if (time != 0 && time < now) {
+                batch.put(record.refresh(now));
+            }
+        }
+
+        batch.commit();
+    }
+
+    /**
+     * Start a batch to write several changes at once.
+     */
+    Batch batch() {
+        return new Batch();
+    }
+
+    /**
+     * Write all changes of the batch within a single transaction. The index
+     * is only updated if the storage has accepted all changes.
+     *
+     * @param batch
+     *      The collected changes
+     *
+     * @return
+     *      The number of added, replaced or removed notifications
+     */
+    private synchronized int commit(Batch batch) {
+        List<Integer> ids = new ArrayList<Integer>();
+
+        for (int id : batch.removals) {
+            if (index.containsKey(id)) {
+                ids.add(id);
+            }
+        }
+
+        storage.write(batch.records.values(), ids);
+
+        for (NotificationRecord record : batch.records.values()) {
+            index.put(record.getId(), record);
+        }
+
+        for (int id : ids) {
+            index.remove(id);
+        }
+
+        return batch.records.size() + ids.size();
+    }
+
+    /**
+     * Records of the stored notifications with matching ID.
+     *
+     * @param ids
+     *      Set of notification IDs
+     */
+    private List<NotificationRecord> getByIds(List<Integer> ids) {
+        List<NotificationRecord> records = new ArrayList<NotificationRecord>();
+
+        for (int id : ids) {
+            NotificationRecord record = index.get(id);
+
+            if (record != null) {
+                records.add(record);
+            }
+        }
+
+        return records;
+    }
+
+    /**
+     * Collects changes to write them at once. For each ID only the last
+     * change is kept.
+     */
+    class Batch {
+
+        // Records to add or replace by ID
+        private final Map<Integer, NotificationRecord> records =
+                new LinkedHashMap<Integer, NotificationRecord>();
+
+        // IDs of the records to remove
+        private final Set<Integer> removals = new LinkedHashSet<Integer>();
+
+        /**
+         * Add or replace the notification.
+         *
+         * @param record
+         *      The notification record
+         */
+        Batch put(NotificationRecord record) {
+            removals.remove(record.getId());
+            records.put(record.getId(), record);
+            return this;
+        }
+
+        /**
+         * Remove the notification.
+         *
+         * @param id
+         *      The notification ID
+         */
+        Batch remove(int id) {
+            records.remove(id);
+            removals.add(id);
+            return this;
+        }
+
+        /**
+         * Write all changes at once.
+         *
+         * @return
+         *      The number of added, replaced or removed notifications
+         */
+        int commit() {
+            return NotificationStore.this.commit(this);
+        }
+
+    }
+
+}
@@ -29,14 +29,14 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Build;
 import android.support.v4.app.NotificationCompat;
 
-import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 /**
  * Wrapper class around OS notification class. Handles basic operations
@@ -67,6 +67,15 @@ public class NotificationWrapper {
     // Receiver to handle the trigger event
     private Class<?> receiver = defaultReceiver;
 
+    // Receiver to handle the clear event
+    private Class<?> clearReceiver;
+
+    // Activity to handle the click event
+    private Class<?> clickActivity;
+
+    // Activity to handle the action click event
+    private Class<?> actionClickActivity;
+
     /**
      * Constructor
      *
@@ -87,6 +96,36 @@ public class NotificationWrapper {
         this.receiver = receiver != null ? receiver : defaultReceiver;
     }
 
+    /**
+     * Constructor
+     *
+     * @param context
+     *      Application context
+     * @param options
+     *      Parsed notification options
+     * @param builder
+     *      Pre-configured notification builder
+     * @param receiver
+     *      Receiver to handle the trigger event
+     * @param clearReceiver
+     *      Receiver to handle the clear event
+     * @param clickActivity
+     *      Activity to handle the click event
+     * @param actionClickActivity
+     *      Activity to handle the action click event
+     */
+    NotificationWrapper(Context context, Options options,
+                        NotificationCompat.Builder builder, Class<?> receiver,
+                        Class<?> clearReceiver, Class<?> clickActivity,
+                        Class<?> actionClickActivity) {
+
+        this(context, options, builder, receiver);
+
+        this.clearReceiver       = clearReceiver;
+        this.clickActivity       = clickActivity;
+        this.actionClickActivity = actionClickActivity;
+    }
+
     /**
      * Get application context.
      */
@@ -112,7 +151,7 @@ public class NotificationWrapper {
      * If it's a repeating notification.
      */
     public boolean isRepeating () {
-        return getOptions().getRepeatInterval() > 0;
+        return options.getRecurrence().isRepeating();
     }
 
     /**
@@ -141,13 +180,12 @@ public class NotificationWrapper {
      */
     protected boolean isUpdate () {
 
-        if (!options.getDict().has("updatedAt"))
-            return false;
+        long updatedAt = options.getUpdatedAt();
 
-        long now       = new Date().getTime();
-        long updatedAt = options.getDict().optLong("updatedAt", now);
+        if (updatedAt == 0)
+            return false;
 
-        return (now - updatedAt) < 1000;
+        return (System.currentTimeMillis() - updatedAt) < 1000;
     }
 
     /**
@@ -161,24 +199,202 @@ public class NotificationWrapper {
      * Schedule the local notification.
      */
     public void schedule() {
-        long triggerTime = options.getTriggerTime();
-
         persist();
+        scheduleAlarm();
+    }
+
+    /**
+     * Register the alarm which fires the local notification. Does not
+     * persist the notification, e.g. to restore it after reboot.
+     */
+    public void scheduleAlarm() {
+        if (isCoalescing()) {
+            getScheduler().arm(receiver);
+        } else if (isWindowed()) {
+            getWindow().slide(receiver);
+        } else {
+            registerAlarm();
+        }
+    }
+
+    /**
+     * Register the alarms of the notifications which have been persisted
+     * together. The coalescing scheduler arms once and the windowed
+     * scheduler slides once for all of them instead of once per
+     * notification.
+     *
+     * @param context
+     *      Application context
+     * @param notifications
+     *      The persisted notifications
+     * @param receiver
+     *      Receiver to handle the trigger event, null for the default
+     */
+    static void scheduleAlarms(Context context,
+                               List<NotificationWrapper> notifications,
+                               Class<?> receiver) {
+
+        Config config    = Config.getInstance(context);
+        Class<?> trigger = receiver != null ? receiver : defaultReceiver;
+
+        if (config.isCoalescing()) {
+            CoalescingScheduler.getInstance(context).arm(trigger);
+            return;
+        }
+
+        if (config.isWindowed()) {
+            WindowedScheduler.getInstance(context).slide(trigger);
+            return;
+        }
+
+        for (NotificationWrapper notification : notifications) {
+            notification.scheduleAlarm();
+        }
+    }
+
+    /**
+     * Replace the alarms of the notifications which have been updated
+     * together. The coalescing scheduler arms once and the windowed
+     * scheduler releases all of them and slides once instead of once per
+     * notification.
+     *
+     * @param context
+     *      Application context
+     * @param notifications
+     *      The updated notifications
+     * @param receiver
+     *      Receiver to handle the trigger event, null for the default
+     */
+    static void rescheduleAlarms(Context context,
+                                 List<NotificationWrapper> notifications,
+                                 Class<?> receiver) {
+
+        List<Integer> ids = new ArrayList<Integer>();
+
+        for (NotificationWrapper notification : notifications) {
+            ids.add(notification.getId());
+        }
+
+        releaseAlarms(context, ids,
+                receiver != null ? receiver : defaultReceiver);
+
+        scheduleAlarms(context, notifications, receiver);
+    }
+
+    /**
+     * Unregister the alarms of the notifications which have been removed
+     * together, and remove them from the status bar together with the
+     * intents of their events. The coalescing scheduler arms once and the
+     * windowed scheduler releases all of them and slides once.
+     *
+     * @param context
+     *      Application context
+     * @param ids
+     *      The IDs of the removed notifications
+     * @param receiver
+     *      Receiver to handle the trigger event, null for the default
+     */
+    static void cancelAlarms(Context context, List<Integer> ids,
+                             Class<?> receiver) {
+
+        Config config    = Config.getInstance(context);
+        Class<?> trigger = receiver != null ? receiver : defaultReceiver;
+
+        releaseAlarms(context, ids, trigger);
+
+        if (config.isCoalescing()) {
+            CoalescingScheduler.getInstance(context).arm(trigger);
+        } else if (config.isWindowed()) {
+            WindowedScheduler.getInstance(context).slide(trigger);
+        }
+    }
+
+    /**
+     * Unregister the alarms of the notifications without updating the
+     * coalescing or windowed scheduler, and remove them from the status
+     * bar together with the intents of their events.
+     *
+     * @param context
+     *      Application context
+     * @param ids
+     *      The notification IDs
+     * @param receiver
+     *      Receiver to handle the trigger event
+     */
+    private static void releaseAlarms(Context context, List<Integer> ids,
+                                      Class<?> receiver) {
+
+        Config config = Config.getInstance(context);
+        NotificationManager mgr = (NotificationManager) context
+                .getSystemService(Context.NOTIFICATION_SERVICE);
+
+        if (config.isWindowed()) {
+            WindowedScheduler.getInstance(context).release(ids, receiver);
+        }
+
+        for (int id : ids) {
+            if (!config.isCoalescing() && !config.isWindowed()) {
+                PendingIntents.cancelTrigger(context, receiver, id);
+                Metrics.alarmCanceled();
+            }
+
+            mgr.cancel(id);
+            Builder.release(context, id);
+        }
+    }
+
+    /**
+     * Register an alarm for this notification only. Repeating alarms start
+     * at the next occurrence, so that Android does not try to catch up
+     * occurrences from the past. Calendar based intervals like day or month
+     * differ in length, so that only their next occurrence gets registered
+     * and the trigger receiver registers the one after.
+     */
+    void registerAlarm() {
+        Recurrence rule = options.getRecurrence();
+
+        if (rule.isRepeating()) {
+            long now = System.currentTimeMillis();
+            registerAlarm(rule.getOccurrenceAfter(now - 1));
+        } else {
+            registerAlarm(options.getTriggerTime());
+        }
+    }
+
+    /**
+     * Register the alarm for the occurrence after the current one. Called
+     * by the trigger receiver for calendar based intervals.
+     */
+    void registerNextAlarm() {
+        long now = System.currentTimeMillis();
+
+        registerAlarm(options.getRecurrence().getOccurrenceAfter(now));
+    }
+
+    /**
+     * Register an alarm for this notification only.
+     *
+     * @param triggerTime
+     *      Time of the first alarm in milliseconds
+     */
+    private void registerAlarm(long triggerTime) {
+        Recurrence rule   = options.getRecurrence();
+        boolean repeating = rule.isRepeating() && !rule.isCalendarBased();
 
         // Intent gets called when the NotificationWrapper gets fired
-        Intent intent = new Intent(context, receiver)
-                .setAction(options.getIdStr())
-                .putExtra(Options.EXTRA, options.toString());
+        Intent intent = options.putExtras(new Intent(context, receiver)
+                .setAction(options.getIdStr()));
 
-        PendingIntent pi = PendingIntent.getBroadcast(
-                context, 0, intent, PendingIntent.FLAG_CANCEL_CURRENT);
+        PendingIntent pi = PendingIntents.getTrigger(context, intent, getId());
 
-        if (isRepeating()) {
+        if (repeating) {
             getAlarmMgr().setRepeating(AlarmManager.RTC_WAKEUP,
-                    triggerTime, options.getRepeatInterval(), pi);
+                    triggerTime, rule.getInterval(), pi);
         } else {
             getAlarmMgr().set(AlarmManager.RTC_WAKEUP, triggerTime, pi);
         }
+
+        Metrics.alarmRegistered();
     }
 
     /**
@@ -195,23 +411,73 @@ public class NotificationWrapper {
 
     /**
      * Cancel the local notification.
-     *
-     * Create an intent that looks similar, to the one that was registered
-     * using schedule. Making sure the notification id in the action is the
-     * same. Now we can search for such an intent using the 'getService'
-     * method and cancel it.
      */
     public void cancel() {
-        Intent intent = new Intent(context, receiver)
-                .setAction(options.getIdStr());
+        unpersist();
+        cancelAlarm();
+    }
 
-        PendingIntent pi = PendingIntent.
-                getBroadcast(context, 0, intent, 0);
+    /**
+     * Unregister the alarm and remove the local notification from the
+     * status bar together with the intents of its events. Does not remove
+     * the persisted notification.
+     */
+    void cancelAlarm() {
+        if (isCoalescing()) {
+            getScheduler().arm(receiver);
+        } else if (isWindowed()) {
+            getWindow().release(getId(), receiver);
+            getWindow().slide(receiver);
+        } else {
+            unregisterAlarm();
+        }
 
-        getAlarmMgr().cancel(pi);
         getNotMgr().cancel(options.getId());
 
-        unpersist();
+        PendingIntents.release(context, getId(),
+                clearReceiver, clickActivity, actionClickActivity);
+    }
+
+    /**
+     * Unregister the alarm of this notification only.
+     *
+     * Create an intent that looks similar, to the one that was registered
+     * using schedule. Making sure the notification id in the action and the
+     * request code are the same. Now we can search for such an intent and
+     * cancel it.
+     */
+    void unregisterAlarm() {
+        PendingIntents.cancelTrigger(context, receiver, getId());
+
+        Metrics.alarmCanceled();
+    }
+
+    /**
+     * If only one alarm for the earliest due notification is registered.
+     */
+    private boolean isCoalescing () {
+        return Config.getInstance(context).isCoalescing();
+    }
+
+    /**
+     * If alarms are registered for the nearest notifications only.
+     */
+    private boolean isWindowed () {
+        return Config.getInstance(context).isWindowed();
+    }
+
+    /**
+     * Scheduler which registers the alarms for the nearest notifications.
+     */
+    private WindowedScheduler getWindow () {
+        return WindowedScheduler.getInstance(context);
+    }
+
+    /**
+     * Scheduler which registers the alarm for the earliest notification.
+     */
+    private CoalescingScheduler getScheduler () {
+        return CoalescingScheduler.getInstance(context);
     }
 
     /**
@@ -243,36 +509,41 @@ public class NotificationWrapper {
      */
     public int getTriggerCountSinceSchedule() {
         long now = System.currentTimeMillis();
-        long triggerTime = options.getTriggerTime();
 
         if (!wasInThePast())
             return 0;
 
-        if (!isRepeating())
-            return 1;
-
-        return (int) ((now - triggerTime) / options.getRepeatInterval());
+        return (int) options.getRecurrence().getCount(now);
     }
 
     /**
      * Encode options to JSON.
      */
     public String toString() {
-        JSONObject dict = options.getDict();
-        JSONObject json = new JSONObject();
+        return toJSON().toString();
+    }
 
-        try {
-            json = new JSONObject(dict.toString());
-        } catch (JSONException e) {
-            e.printStackTrace();
-        }
+    /**
+     * Copy of the options without the internal properties, as passed
+     * to JS.
+     */
+    public JSONObject toJSON() {
+        return toJSON(options.getDict());
+    }
 
+    /**
+     * Strip the options persisted for internal use only.
+     *
+     * @param json
+     *      The options of a notification, gets modified
+     */
+    static JSONObject toJSON(JSONObject json) {
         json.remove("firstAt");
         json.remove("updatedAt");
         json.remove("soundUri");
         json.remove("iconUri");
 
-        return json.toString();
+        return json;
     }
 
     /**
@@ -281,37 +552,21 @@ public class NotificationWrapper {
      * upon device reboot, app restart, retrieve notifications, aso.
      */
     private void persist () {
-        SharedPreferences.Editor editor = getPrefs().edit();
-
-        editor.putString(options.getIdStr(), options.toString());
-
-        if (Build.VERSION.SDK_INT < 9) {
-            editor.commit();
-        } else {
-            editor.apply();
-        }
+        getStore().put(NotificationRecord.from(options));
     }
 
     /**
      * Remove the notification from the Android shared Preferences.
      */
     private void unpersist () {
-        SharedPreferences.Editor editor = getPrefs().edit();
-
-        editor.remove(options.getIdStr());
-
-        if (Build.VERSION.SDK_INT < 9) {
-            editor.commit();
-        } else {
-            editor.apply();
-        }
+        getStore().remove(options.getId());
     }
 
     /**
-     * Shared private preferences for the application.
+     * Process-wide store of the persisted notifications.
      */
-    private SharedPreferences getPrefs () {
-        return context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+    private NotificationStore getStore () {
+        return NotificationStore.getInstance(context);
     }
 
     /**
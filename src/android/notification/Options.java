@@ -23,31 +23,74 @@
 
 package com.commontime.plugin.notification.notification;
 
-import android.app.AlarmManager;
 import android.content.Context;
+import android.content.Intent;
 import android.graphics.Bitmap;
 import android.net.Uri;
+import android.os.Bundle;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
 
 /**
  * Wrapper around the JSON object passed through JS which contains all
  * possible option values. Class provides simple readers and more advanced
  * methods to convert independent values into platform specific values.
+ * The options are parsed once on construction and never change afterwards.
  */
 public class Options {
 
     // Key name for bundled extras
     static final String EXTRA = "NOTIFICATION_OPTIONS";
 
-    // The original JSON object
-    private JSONObject options = new JSONObject();
+    // Key name for the notification ID within bundled extras
+    static final String EXTRA_ID = "NOTIFICATION_ID";
 
-    // Repeat interval
-    private long interval = 0;
+    // Copy of the original JSON object, kept to hand the options back to JS
+    private final JSONObject options;
+
+    // Recurrence rule anchored at the trigger date
+    private final Recurrence recurrence;
+
+    // Notification ID as number and as string
+    private final int id;
+    private final String idStr;
+
+    // Trigger date in milliseconds
+    private final long triggerTime;
+
+    // Time of the last update in milliseconds, 0 if never updated
+    private final long updatedAt;
+
+    // Repeat interval as passed by JS
+    private final String every;
+
+    // Texts, the title falls back to the app label
+    private final String text;
+    private final String title;
+
+    // Flags and numbers
+    private final int badge;
+    private final boolean ongoing;
+    private final boolean autoClear;
+    private final int ledColor;
+
+    // Asset paths and stored URIs, remote ones get resolved on use
+    private final String icon;
+    private final String iconUri;
+    private final String smallIcon;
+    private final String soundUri;
+
+    // Channel settings, null for the default channel
+    private final JSONObject channel;
+
+    // Compiled category, null if the notification has no actions
+    private final CategoryRegistry.Category category;
 
     // Application context
     private final Context context;
@@ -57,88 +100,265 @@ public class Options {
 
 
     /**
-     * Constructor
+     * Constructor for empty options.
      *
      * @param context
      *      Application context
      */
     public Options(Context context){
+        this(context, new JSONObject());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param context
+     *      Application context
+     * @param options
+     *      JSON properties, get copied
+     */
+    public Options(Context context, JSONObject options){
         this.context = context;
         this.assets  = AssetUtil.getInstance(context);
+        this.options = copy(options);
+
+        id          = options.optInt("id", 0);
+        idStr       = Integer.toString(id);
+        triggerTime = options.optLong("at", 0) * 1000;
+        updatedAt   = options.optLong("updatedAt", 0);
+        every       = options.optString("every");
+        text        = options.optString("text", "");
+        title       = parseTitle(options.optString("title", ""));
+        badge       = options.optInt("badge", 0);
+        ongoing     = options.optBoolean("ongoing", false);
+        autoClear   = options.optBoolean("autoClear", false);
+        ledColor    = parseLedColor(options.optString("led", "000000"));
+        icon        = options.optString("icon", "icon");
+        smallIcon   = options.optString("smallIcon", "");
+        channel     = parseChannel(options.opt("channel"));
+        recurrence  = Recurrence.parse(every, triggerTime);
+
+        parseAssets();
+
+        iconUri     = options.optString("iconUri");
+        soundUri    = options.optString("soundUri");
+        category    = parseCategory();
     }
 
     /**
-     * Parse given JSON properties.
+     * Parse given JSON properties. The options are immutable, so that a
+     * new instance gets returned.
      *
      * @param options
      *      JSON properties
      */
     public Options parse (JSONObject options) {
-        this.options = options;
+        return new Options(context, options);
+    }
 
-        parseInterval();
-        parseAssets();
+    /**
+     * Shallow copy of the JSON properties, so that the resolved asset URIs
+     * do not get written into the object of the caller.
+     *
+     * @param json
+     *      JSON properties
+     */
+    private static JSONObject copy(JSONObject json) {
+        List<String> names = new ArrayList<String>();
+        Iterator<String> keys = json.keys();
 
-        return this;
-    }
-
-    /**
-     * Parse repeat interval.
-     */
-    private void parseInterval() {
-        String every = options.optString("every").toLowerCase();
-
-        if (every.isEmpty()) {
-            interval = 0;
-        } else
-        if (every.equals("second")) {
-            interval = 1000;
-        } else
-        if (every.equals("minute")) {
-            interval = AlarmManager.INTERVAL_FIFTEEN_MINUTES / 15;
-        } else
-        if (every.equals("hour")) {
-            interval = AlarmManager.INTERVAL_HOUR;
-        } else
-        if (every.equals("day")) {
-            interval = AlarmManager.INTERVAL_DAY;
-        } else
-        if (every.equals("week")) {
-            interval = AlarmManager.INTERVAL_DAY * 7;
-        } else
-        if (every.equals("month")) {
-            interval = AlarmManager.INTERVAL_DAY * 31;
-        } else
-        if (every.equals("year")) {
-            interval = AlarmManager.INTERVAL_DAY * 365;
-        } else {
-            try {
-                interval = Integer.parseInt(every) * 60000;
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        while (keys.hasNext()) {
+            names.add(keys.next());
+        }
+
+        try {
+            return new JSONObject(json, names.toArray(new String[names.size()]));
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return new JSONObject();
+        }
+    }
+
+    /**
+     * Title of the notification, falls back to the app name.
+     *
+     * @param title
+     *      The title option
+     */
+    private String parseTitle(String title) {
+
+        if (!title.isEmpty())
+            return title;
+
+        return context.getApplicationInfo().loadLabel(
+                context.getPackageManager()).toString();
+    }
+
+    /**
+     * Parse the LED color given as hex string.
+     *
+     * @param hex
+     *      The color in RRGGBB notation
+     */
+    private static int parseLedColor(String hex) {
+        try {
+            return Integer.parseInt(hex, 16) + 0xFF000000;
+        } catch (NumberFormatException e) {
+            e.printStackTrace();
+            return 0xFF000000;
         }
     }
 
     /**
-     * Parse asset URIs.
+     * Resolve the asset URIs once and store them along with the options,
+     * so that they do not need to get resolved again after a restore.
      */
     private void parseAssets() {
 
         if (options.has("iconUri"))
             return;
 
-        Uri iconUri = assets.parse(options.optString("icon", "icon"));
-        Uri soundUri = assets.parseSound(options.optString("sound", null));
+        String sound = options.optString("sound", null);
 
         try {
-            options.put("iconUri", iconUri.toString());
-            options.put("soundUri", soundUri.toString());
+            options.put("iconUri", AssetUtil.isRemote(icon)
+                    ? icon : assets.parse(icon).toString());
+            options.put("soundUri", AssetUtil.isRemote(sound)
+                    ? sound : assets.parseSound(sound).toString());
         } catch (JSONException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Parse the channel option which holds either the channel settings or
+     * only its ID.
+     *
+     * @param value
+     *      The option value
+     */
+    private static JSONObject parseChannel(Object value) {
+
+        if (value instanceof JSONObject)
+            return (JSONObject) value;
+
+        if (!(value instanceof String))
+            return null;
+
+        JSONObject json = new JSONObject();
+
+        try {
+            json.put("id", value);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+
+        return json;
+    }
+
+    /**
+     * Look up the category in the registry, or compile the definition
+     * the notification carries along, see CategoryRegistry.resolve.
+     */
+    private CategoryRegistry.Category parseCategory() {
+        Object value = options.opt("category");
+
+        if (value instanceof String)
+            return CategoryRegistry.getInstance(context).get((String) value);
+
+        if (value instanceof JSONObject)
+            return CategoryRegistry.getInstance(context)
+                    .resolve((JSONObject) value);
+
+        return null;
+    }
+
+    /**
+     * Download remote assets, resolve the small icon and decode the large
+     * icon into the bitmap cache. Blocks until done.
+     */
+    void prefetchAssets() {
+        assets.prefetch(icon);
+        assets.prefetch(options.optString("sound", null));
+
+        getSmallIcon();
+        getIconBitmap();
+    }
+
+    /**
+     * Add the options to the intent. If intents carry the ID only, the
+     * options are loaded from the store when the intent is received.
+     *
+     * @param intent
+     *      The intent to add the extras to
+     */
+    Intent putExtras(Intent intent) {
+        return putExtras(context, intent, getId(), toString());
+    }
+
+    /**
+     * Add the options to the intent. If intents carry the ID only, the
+     * options are loaded from the store when the intent is received.
+     *
+     * @param context
+     *      Application context
+     * @param intent
+     *      The intent to add the extras to
+     * @param id
+     *      The notification ID
+     * @param options
+     *      JSON encoded options
+     */
+    static Intent putExtras(Context context, Intent intent, int id,
+                            String options) {
+
+        intent.putExtra(EXTRA_ID, id);
+
+        if (!Config.getInstance(context).isIdOnly()) {
+            intent.putExtra(EXTRA, options);
+        }
+
+        return intent;
+    }
+
+    /**
+     * Options carried by the intent, or loaded from the store if the intent
+     * carries the ID only.
+     *
+     * @param context
+     *      Application context
+     * @param intent
+     *      The received intent
+     *
+     * @return
+     *      null if the options could not be found
+     */
+    static JSONObject getExtras(Context context, Intent intent) {
+        Bundle bundle = intent.getExtras();
+
+        if (bundle == null)
+            return null;
+
+        String data = bundle.getString(EXTRA);
+
+        if (data != null) {
+            try {
+                return new JSONObject(data);
+            } catch (JSONException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+
+        if (!bundle.containsKey(EXTRA_ID))
+            return null;
+
+        NotificationRecord record = NotificationStore.getInstance(context)
+                .get(bundle.getInt(EXTRA_ID));
+
+        return record != null ? record.getOptions() : null;
+    }
+
     /**
      * Application context.
      */
@@ -147,174 +367,173 @@ public class Options {
     }
 
     /**
-     * Wrapped JSON object.
+     * Copy of the wrapped JSON object. Changes to the copy do not affect
+     * the options.
      */
     JSONObject getDict () {
-        return options;
+        try {
+            return new JSONObject(options.toString());
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return new JSONObject();
+        }
     }
 
     /**
      * Text for the local notification.
      */
     public String getText() {
-        return options.optString("text", "");
+        return text;
     }
 
     /**
-     * Repeat interval (day, week, month, year, aso.)
+     * Nominal repeat interval (day, week, month, year, aso.) in
+     * milliseconds. Use the recurrence rule to compute the occurrences.
      */
     public long getRepeatInterval() {
-        return interval;
+        return recurrence.getInterval();
+    }
+
+    /**
+     * Repeat interval as passed by JS.
+     */
+    String getEvery() {
+        return every;
+    }
+
+    /**
+     * Recurrence rule anchored at the trigger date.
+     */
+    Recurrence getRecurrence() {
+        return recurrence;
     }
 
     /**
      * Badge number for the local notification.
      */
     public int getBadgeNumber() {
-        return options.optInt("badge", 0);
+        return badge;
     }
 
     /**
      * ongoing flag for local notifications.
      */
     public Boolean isOngoing() {
-        return options.optBoolean("ongoing", false);
+        return ongoing;
     }
 
     /**
      * autoClear flag for local notifications.
      */
     public Boolean isAutoClear() {
-        return options.optBoolean("autoClear", false);
+        return autoClear;
     }
 
     /**
      * ID for the local notification as a number.
      */
     public Integer getId() {
-        return options.optInt("id", 0);
+        return id;
     }
 
     /**
      * ID for the local notification as a string.
      */
     public String getIdStr() {
-        return getId().toString();
+        return idStr;
     }
 
     /**
      * Trigger date.
      */
     public Date getTriggerDate() {
-        return new Date(getTriggerTime());
+        return new Date(triggerTime);
     }
 
     /**
      * Trigger date in milliseconds.
      */
     public long getTriggerTime() {
-        //return Math.max(
-        //        System.currentTimeMillis(),
-                return options.optLong("at", 0) * 1000;
-        //);
+        return triggerTime;
     }
 
     /**
-     * Title for the local notification.
+     * Time of the last update in milliseconds, 0 if never updated.
      */
-    public String getTitle() {
-        String title = options.optString("title", "");
-
-        if (title.isEmpty()) {
-            title = context.getApplicationInfo().loadLabel(
-                    context.getPackageManager()).toString();
-        }
+    long getUpdatedAt() {
+        return updatedAt;
+    }
 
+    /**
+     * Title for the local notification. Falls back to the app name.
+     */
+    public String getTitle() {
         return title;
     }
 
+    /**
+     * Channel of the local notification as a JSONObject, null for the
+     * default channel. The option holds either the channel settings or
+     * only its ID.
+     */
+    JSONObject getChannel() {
+        return channel;
+    }
+
     /**
      * Category info for the local notification as a JSONObject.
      */
     public JSONObject getCategory() {
-        try
-        {
-            return options.optJSONObject("category");
-        }
-        catch (Exception e)
-        {
-            return null;
-        }
+        return category != null ? category.getDict() : null;
     }
 
     /**
-     * Category info for the local notification as a JSONObject.
+     * Compiled category, null if the notification has no actions.
+     */
+    CategoryRegistry.Category getCompiledCategory() {
+        return category;
+    }
+
+    /**
+     * Category identifier, null if the notification has no category.
      */
     public String getCategoryIdentifier() {
-        try
-        {
-            return getCategory().getString("identifier");
-        }
-        catch (Exception e)
-        {
-            return null;
-        }
+        return category != null ? category.getIdentifier() : null;
     }
 
     /**
-     * Action info for the local notification as a JSONObject.
+     * Number of actions of the category.
      */
     public int getCategoryActionCount() {
-        try
-        {
-            return getCategory().optJSONArray("actions").length();
-        }
-        catch (Exception e)
-        {
-            return 0;
-        }
+        return category != null ? category.getActionCount() : 0;
     }
 
     /**
      * Action info for the local notification as a JSONObject.
      */
     public JSONObject getCategoryAction(int pos) {
-        try
-        {
-            return getCategory().optJSONArray("actions").getJSONObject(pos);
-        }
-        catch (Exception e)
-        {
-            return null;
-        }
+        return hasAction(pos) ? category.getAction(pos) : null;
     }
 
     /**
-     * Action info for the local notification as a JSONObject.
+     * Identifier of the action, empty if not present.
      */
     public String getCategoryActionIdentifier(int pos) {
-        try
-        {
-            return getCategoryAction(pos).getString("identifier");
-        }
-        catch (JSONException e)
-        {
-            return "";
-        }
+        return hasAction(pos) ? category.getActionIdentifier(pos) : "";
     }
 
     /**
-     * Action info for the local notification as a JSONObject.
+     * Title of the action, empty if not present.
      */
     public String getCategoryActionTitle(int pos) {
-        try
-        {
-            return getCategoryAction(pos).getString("title");
-        }
-        catch (JSONException e)
-        {
-            return "";
-        }
+        return hasAction(pos) ? category.getActionTitle(pos) : "";
+    }
+
+    /**
+     * If the category has an action at the position.
+     */
+    private boolean hasAction(int pos) {
+        return pos >= 0 && pos < getCategoryActionCount();
     }
 
     /**
@@ -322,41 +541,39 @@ public class Options {
      *      The notification color for LED
      */
     public int getLedColor() {
-        String hex = options.optString("led", "000000");
-        int aRGB   = Integer.parseInt(hex,16);
-
-        aRGB += 0xFF000000;
-
-        return aRGB;
+        return ledColor;
     }
 
     /**
      * Sound file path for the local notification.
      */
     public Uri getSoundUri() {
-        Uri uri = null;
-
-        try{
-            uri = Uri.parse(options.optString("soundUri"));
-        } catch (Exception e){
-            e.printStackTrace();
-        }
-
-        return uri;
+        return assets.resolve(soundUri);
     }
 
     /**
      * Icon bitmap for the local notification.
      */
     public Bitmap getIconBitmap() {
-        String icon = options.optString("icon", "icon");
-        Bitmap bmp;
+        String uri  = assets.resolve(iconUri).toString();
+        BitmapCache cache = BitmapCache.getInstance(context);
+        Bitmap bmp = uri.isEmpty() ? null : cache.get(uri);
+
+        if (bmp != null)
+            return bmp;
 
         try{
-            Uri uri = Uri.parse(options.optString("iconUri"));
-            bmp = assets.getIconFromUri(uri);
+            bmp = assets.getIconFromUri(Uri.parse(uri));
+            cache.put(uri, bmp);
         } catch (Exception e){
-            bmp = assets.getIconFromDrawable(icon);
+            String key = "drawable:" + icon;
+
+            bmp = cache.get(key);
+
+            if (bmp == null) {
+                bmp = assets.getIconFromDrawable(icon);
+                cache.put(key, bmp);
+            }
         }
 
         return bmp;
@@ -366,9 +583,7 @@ public class Options {
      * Small icon resource ID for the local notification.
      */
     public int getSmallIcon () {
-        String icon = options.optString("smallIcon", "");
-
-        int resId = assets.getResIdForDrawable(icon);
+        int resId = assets.getResIdForDrawable(smallIcon);
 
         if (resId == 0) {
             resId = android.R.drawable.screen_background_dark;
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package com.commontime.plugin.notification.notification;
+
+import android.util.Base64;
+
+/**
+ * Position within a paginated query result. The records are in a stable
+ * order, either by ID or by next trigger time and ID, so that the cursor
+ * only needs to remember the sort key of the last record of a page. The
+ * next page then continues after that key, no matter how many records
+ * have been added or removed in between. JS gets the cursor as an opaque
+ * string.
+ */
+final class PageCursor {
+
+    // Order by notification ID
+    static final String ORDER_ID = "id";
+
+    // Order by next trigger time, then by notification ID
+    static final String ORDER_TRIGGER = "trigger";
+
+    // Prefix of the encoded cursor to detect foreign strings
+    private static final String VERSION = "1";
+
+    // Flags of the encoded cursor
+    private static final int FLAGS =
+            Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING;
+
+    // If ordered by next trigger time, else by ID
+    private final boolean byTriggerTime;
+
+    // Next trigger time of the last record of the former page
+    private final long time;
+
+    // ID of the last record of the former page
+    private final int id;
+
+    /**
+     * Constructor
+     *
+     * @param byTriggerTime
+     *      If ordered by next trigger time, else by ID
+     * @param time
+     *      Next trigger time of the last record of the former page
+     * @param id
+     *      ID of the last record of the former page
+     */
+    private PageCursor(boolean byTriggerTime, long time, int id) {
+        this.byTriggerTime = byTriggerTime;
+        this.time          = time;
+        this.id            = id;
+    }
+
+    /**
+     * Cursor of the first page.
+     *
+     * @param order
+     *      One of id or trigger, unknown values order by ID
+     */
+    static PageCursor first(String order) {
+        return new PageCursor(ORDER_TRIGGER.equals(order),
+                Long.MIN_VALUE, Integer.MIN_VALUE);
+    }
+
+    /**
+     * Decode the cursor passed by JS.
+     *
+     * @param cursor
+     *      The encoded cursor
+     *
+     * @return
+     *      null if the cursor is invalid
+     */
+    static PageCursor decode(String cursor) {
+        try {
+            String[] parts = new String(Base64.decode(cursor, FLAGS), "UTF-8")
+                    .split(":");
+
+            if (parts.length != 4 || !VERSION.equals(parts[0]))
+                return null;
+
+            return new PageCursor(ORDER_TRIGGER.equals(parts[1]),
+                    Long.parseLong(parts[2]), Integer.parseInt(parts[3]));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Cursor of the page after the record.
+     *
+     * @param record
+     *      The last record of the current page
+     */
+    PageCursor next(NotificationRecord record) {
+        return new PageCursor(byTriggerTime,
+                record.getNextTriggerTime(), record.getId());
+    }
+
+    /**
+     * If ordered by next trigger time, else by ID.
+     */
+    boolean isByTriggerTime() {
+        return byTriggerTime;
+    }
+
+    /**
+     * Next trigger time of the last record of the former page.
+     */
+    long getTime() {
+        return time;
+    }
+
+    /**
+     * ID of the last record of the former page.
+     */
+    int getId() {
+        return id;
+    }
+
+    /**
+     * Encode the cursor for JS.
+     */
+    String encode() {
+        String cursor = VERSION + ":" + (byTriggerTime ? ORDER_TRIGGER : ORDER_ID)
+                + ":" + time + ":" + id;
+
+        try {
+            return Base64.encodeToString(cursor.getBytes("UTF-8"), FLAGS);
+        } catch (java.io.UnsupportedEncodingException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package com.commontime.plugin.notification.notification;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Request codes of the intents handed over to the OS for a notification.
+ * Each notification owns a fixed range of codes, one per intent role, so
+ * that the intents of a notification can be updated in place and found
+ * again to release them. The codes are only unique for IDs within
+ * 2^27 of each other, as the multiplication overflows beyond. Therefore
+ * all intents of a notification carry its ID as action too, so that the
+ * intents of two notifications never match even if their codes do.
+ */
+final class PendingIntents {
+
+    // Role of the intent which fires the notification
+    static final int TRIGGER = 0;
+
+    // Role of the intent which handles the delete event
+    static final int DELETE = 1;
+
+    // Role of the intent which handles the click event
+    static final int CONTENT = 2;
+
+    // Role of the intent which handles the click on the first action
+    static final int ACTION = 3;
+
+    // Number of request codes reserved per notification
+    private static final int SLOTS = 16;
+
+    // Max number of actions with an intent of their own
+    static final int MAX_ACTIONS = SLOTS - ACTION;
+
+    // Request code used for all intents by former versions
+    private static final int LEGACY_CODE = 0;
+
+    /**
+     * Not meant to be instantiated.
+     */
+    private PendingIntents() {}
+
+    /**
+     * Request code for the intent of the notification.
+     *
+     * @param id
+     *      The notification ID
+     * @param role
+     *      The role of the intent
+     */
+    static int getRequestCode(int id, int role) {
+        return id * SLOTS + role;
+    }
+
+    /**
+     * Request code for the intent of the action.
+     *
+     * @param id
+     *      The notification ID
+     * @param index
+     *      The index of the action, less than MAX_ACTIONS
+     */
+    static int getActionRequestCode(int id, int index) {
+        return getRequestCode(id, ACTION + index);
+    }
+
+    /**
+     * Intent which fires the notification. An existing one gets updated
+     * in place.
+     *
+     * @param context
+     *      Application context
+     * @param intent
+     *      The intent to the trigger receiver
+     * @param id
+     *      The notification ID
+     */
+    static PendingIntent getTrigger(Context context, Intent intent, int id) {
+        return PendingIntent.getBroadcast(context,
+                getRequestCode(id, TRIGGER), intent,
+                PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    /**
+     * Unregister the alarm of the notification and release its intent.
+     * Alarms registered by former versions get canceled as well.
+     *
+     * @param context
+     *      Application context
+     * @param receiver
+     *      Receiver to handle the trigger event
+     * @param id
+     *      The notification ID
+     */
+    static void cancelTrigger(Context context, Class<?> receiver, int id) {
+        AlarmManager mgr = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        Intent intent    = new Intent(context, receiver)
+                .setAction(Integer.toString(id));
+
+        int[] codes = { getRequestCode(id, TRIGGER), LEGACY_CODE };
+
+        for (int code : codes) {
+            PendingIntent pi = PendingIntent.getBroadcast(
+                    context, code, intent, PendingIntent.FLAG_NO_CREATE);
+
+            if (pi == null)
+                continue;
+
+            mgr.cancel(pi);
+            pi.cancel();
+        }
+    }
+
+    /**
+     * Release the intents of the delete, click and action events which
+     * have been handed over together with the notification.
+     *
+     * @param context
+     *      Application context
+     * @param id
+     *      The notification ID
+     * @param clearReceiver
+     *      Receiver of the delete event, may be null
+     * @param clickActivity
+     *      Activity of the click event, may be null
+     * @param actionClickActivity
+     *      Activity of the action click event, may be null
+     */
+    static void release(Context context, int id, Class<?> clearReceiver,
+                        Class<?> clickActivity, Class<?> actionClickActivity) {
+
+        if (clearReceiver != null) {
+            release(PendingIntent.getBroadcast(context,
+                    getRequestCode(id, DELETE),
+                    new Intent(context, clearReceiver).setAction(Integer.toString(id)),
+                    PendingIntent.FLAG_NO_CREATE));
+        }
+
+        if (clickActivity != null) {
+            release(PendingIntent.getActivity(context,
+                    getRequestCode(id, CONTENT),
+                    new Intent(context, clickActivity).setAction(Integer.toString(id)),
+                    PendingIntent.FLAG_NO_CREATE));
+        }
+
+        if (actionClickActivity == null)
+            return;
+
+        // Actions are created in order, the first gap ends them
+        for (int i = 0; i < MAX_ACTIONS; i++) {
+            PendingIntent pi = PendingIntent.getActivity(context,
+                    getActionRequestCode(id, i),
+                    new Intent(context, actionClickActivity).setAction(Integer.toString(id)),
+                    PendingIntent.FLAG_NO_CREATE);
+
+            if (pi == null)
+                break;
+
+            pi.cancel();
+        }
+    }
+
+    /**
+     * Release the intent if it exists.
+     *
+     * @param pi
+     *      The intent or null
+     */
+    private static void release(PendingIntent pi) {
+        if (pi != null) {
+            pi.cancel();
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package com.commontime.plugin.notification.notification;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.commontime.plugin.notification.notification.NotificationWrapper.PREF_KEY;
+
+/**
+ * Legacy preferences file which kept every notification as a JSON string.
+ * Android rewrote the whole file on each change and the file has no
+ * indexes, so it's only read once to migrate existing installations to
+ * the SQLiteStorage and cleared afterwards.
+ */
+class PrefsStorage {
+
+    // Shared private preferences holding the options as JSON
+    private final SharedPreferences prefs;
+
+    /**
+     * Constructor
+     *
+     * @param context
+     *      Application context
+     */
+    PrefsStorage(Context context) {
+        this.prefs = context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * All persisted records.
+     */
+    List<NotificationRecord> load() {
+        Map<String, ?> alarms = prefs.getAll();
+        List<NotificationRecord> records = new ArrayList<NotificationRecord>();
+
+        for (Object json : alarms.values()) {
+            NotificationRecord record = NotificationRecord.from(json.toString());
+
+            if (record != null) {
+                records.add(record);
+            }
+        }
+
+        return records;
+    }
+
+    /**
+     * Remove all persisted notifications.
+     */
+    void clear() {
+        SharedPreferences.Editor editor = prefs.edit().clear();
+
+        if (Build.VERSION.SDK_INT < 9) {
+            editor.commit();
+        } else {
+            editor.apply();
+        }
+    }
+
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package com.commontime.plugin.notification.notification;
+
+import android.app.AlarmManager;
+
+import java.util.TimeZone;
+
+/**
+ * Calendar-correct recurrence rule of a repeating notification, anchored at
+ * its first trigger date. Fixed units like seconds, minutes and hours are
+ * computed in absolute time. Days, weeks, months and years keep the local
+ * time of day across DST changes, and months and years keep the day of
+ * month, clamped to the length of shorter months.
+ *
+ * The local fields of the anchor are computed once, so every occurrence and
+ * the count of occurrences are computed in constant time without looping or
+ * allocating Calendar objects.
+ */
+final class Recurrence {
+
+    // Milliseconds of a day
+    private static final long DAY = AlarmManager.INTERVAL_DAY;
+
+    // Units of the rule
+    private static final int NONE  = 0;
+    private static final int FIXED = 1;
+    private static final int DAYS  = 2;
+    private static final int MONTHS = 3;
+
+    // Shared rule of all one-time notifications
+    private static final Recurrence ONCE =
+            new Recurrence(NONE, 0, 0, 0, null);
+
+    // Unit of the rule
+    private final int unit;
+
+    // Step in milliseconds for FIXED, days for DAYS or months for MONTHS
+    private final long step;
+
+    // Nominal interval in milliseconds
+    private final long interval;
+
+    // First occurrence in milliseconds
+    private final long anchor;
+
+    // Time zone to compute local dates in
+    private final TimeZone tz;
+
+    // Local day since epoch of the anchor
+    private final long anchorDay;
+
+    // Local milliseconds of day of the anchor
+    private final long anchorTimeOfDay;
+
+    // Months since year 0 of the anchor
+    private final long anchorMonth;
+
+    // Day of month of the anchor
+    private final int anchorDayOfMonth;
+
+    /**
+     * Constructor
+     *
+     * @param unit
+     *      Unit of the rule
+     * @param step
+     *      Step in the unit
+     * @param interval
+     *      Nominal interval in milliseconds
+     * @param anchor
+     *      First occurrence in milliseconds
+     * @param tz
+     *      Time zone to compute local dates in
+     */
+    private Recurrence(int unit, long step, long interval, long anchor,
+                       TimeZone tz) {
+
+        this.unit     = unit;
+        this.step     = step;
+        this.interval = interval;
+        this.anchor   = anchor;
+        this.tz       = tz;
+
+        if (unit == DAYS || unit == MONTHS) {
+            long local = anchor + tz.getOffset(anchor);
+            long[] date;
+
+            anchorDay        = floorDiv(local, DAY);
+            anchorTimeOfDay  = local - anchorDay * DAY;
+            date             = toCivil(anchorDay);
+            anchorMonth      = date[0] * 12 + date[1] - 1;
+            anchorDayOfMonth = (int) date[2];
+        } else {
+            anchorDay        = 0;
+            anchorTimeOfDay  = 0;
+            anchorMonth      = 0;
+            anchorDayOfMonth = 0;
+        }
+    }
+
+    /**
+     * Rule for the given repeat interval.
+     *
+     * @param every
+     *      Interval like day, week, month or a number of minutes
+     * @param anchor
+     *      First occurrence in milliseconds
+     */
+    static Recurrence parse (String every, long anchor) {
+        String unit = every == null ? "" : every.toLowerCase();
+
+        if (unit.isEmpty())
+            return ONCE;
+
+        if (unit.equals("second"))
+            return fixed(1000, anchor);
+
+        if (unit.equals("minute"))
+            return fixed(AlarmManager.INTERVAL_FIFTEEN_MINUTES / 15, anchor);
+
+        if (unit.equals("hour"))
+            return fixed(AlarmManager.INTERVAL_HOUR, anchor);
+
+        if (unit.equals("day"))
+            return new Recurrence(DAYS, 1, DAY, anchor, TimeZone.getDefault());
+
+        if (unit.equals("week"))
+            return new Recurrence(DAYS, 7, DAY * 7, anchor, TimeZone.getDefault());
+
+        if (unit.equals("month"))
+            return new Recurrence(MONTHS, 1, DAY * 31, anchor, TimeZone.getDefault());
+
+        if (unit.equals("year"))
+            return new Recurrence(MONTHS, 12, DAY * 365, anchor, TimeZone.getDefault());
+
+        // Any other value is a number of minutes, or else not repeating
+        try {
+            return fixed(Integer.parseInt(unit) * 60000L, anchor);
+        } catch (NumberFormatException e) {
+            return ONCE;
+        }
+    }
+
+    /**
+     * Rule with a fixed interval.
+     *
+     * @param interval
+     *      Interval in milliseconds
+     * @param anchor
+     *      First occurrence in milliseconds
+     */
+    private static Recurrence fixed (long interval, long anchor) {
+
+        if (interval <= 0)
+            return ONCE;
+
+        return new Recurrence(FIXED, interval, interval, anchor, null);
+    }
+
+    /**
+     * If the rule repeats at all.
+     */
+    boolean isRepeating () {
+        return unit != NONE;
+    }
+
+    /**
+     * If the occurrences depend on the calendar, so that the distance
+     * between two of them is not always the same.
+     */
+    boolean isCalendarBased () {
+        return unit == DAYS || unit == MONTHS;
+    }
+
+    /**
+     * Nominal interval in milliseconds, like 31 days for a month. Only
+     * exact for rules which are not calendar based.
+     */
+    long getInterval () {
+        return interval;
+    }
+
+    /**
+     * Time of the occurrence with the given index.
+     *
+     * @param index
+     *      Index of the occurrence, 0 for the anchor
+     */
+    long getOccurrence (long index) {
+
+        if (index <= 0 || unit == NONE)
+            return anchor;
+
+        switch (unit) {
+            case FIXED:
+                return anchor + index * step;
+            case DAYS:
+                return toUtc((anchorDay + index * step) * DAY + anchorTimeOfDay);
+            default:
+                long month = anchorMonth + index * step;
+                long year  = floorDiv(month, 12);
+                int  mon   = (int) (month - year * 12) + 1;
+                int  day   = Math.min(anchorDayOfMonth, getLengthOfMonth(year, mon));
+
+                return toUtc(toEpochDay(year, mon, day) * DAY + anchorTimeOfDay);
+        }
+    }
+
+    /**
+     * Count of occurrences until the given time, inclusive.
+     *
+     * @param time
+     *      Time in milliseconds
+     */
+    long getCount (long time) {
+
+        if (time < anchor)
+            return 0;
+
+        if (unit == NONE)
+            return 1;
+
+        long index = estimateIndex(time);
+
+        // The estimate is off by at most one because of DST and month lengths
+        if (getOccurrence(index) > time) {
+            index--;
+        } else if (getOccurrence(index + 1) <= time) {
+            index++;
+        }
+
+        return index + 1;
+    }
+
+    /**
+     * Time of the first occurrence after the given time or 0 if there
+     * is none.
+     *
+     * @param time
+     *      Time in milliseconds
+     */
+    long getOccurrenceAfter (long time) {
+
+        if (anchor > time)
+            return anchor;
+
+        if (unit == NONE)
+            return 0;
+
+        return getOccurrence(getCount(time));
+    }
+
+    /**
+     * Time of the last occurrence until the given time, inclusive, or 0 if
+     * there is none.
+     *
+     * @param time
+     *      Time in milliseconds
+     */
+    long getOccurrenceBefore (long time) {
+        long count = getCount(time);
+
+        return count == 0 ? 0 : getOccurrence(count - 1);
+    }
+
+    /**
+     * Approximate index of the last occurrence until the given time.
+     *
+     * @param time
+     *      Time in milliseconds, not before the anchor
+     */
+    private long estimateIndex (long time) {
+
+        if (unit == FIXED)
+            return (time - anchor) / step;
+
+        long day = floorDiv(time + tz.getOffset(time), DAY);
+
+        if (unit == DAYS)
+            return Math.max(0, (day - anchorDay) / step);
+
+        long[] date = toCivil(day);
+        long month  = date[0] * 12 + date[1] - 1;
+
+        return Math.max(0, (month - anchorMonth) / step);
+    }
+
+    /**
+     * Convert local milliseconds since epoch into UTC. A local time which
+     * occurs twice when the clocks go back maps to the earlier instant, and
+     * a local time which gets skipped when the clocks go forward is moved
+     * forward by the length of the gap.
+     *
+     * @param local
+     *      Local time in milliseconds
+     */
+    private long toUtc (long local) {
+        long before = tz.getOffset(local - DAY);
+        long after  = tz.getOffset(local + DAY);
+
+        if (before == after || tz.getOffset(local - before) == before)
+            return local - before;
+
+        if (tz.getOffset(local - after) == after)
+            return local - after;
+
+        return local - before;
+    }
+
+    /**
+     * Number of days of the month.
+     *
+     * @param year
+     *      The year
+     * @param month
+     *      The month from 1 to 12
+     */
+    private static int getLengthOfMonth (long year, int month) {
+
+        if (month == 2) {
+            boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            return leap ? 29 : 28;
+        }
+
+        return (month == 4 || month == 6 || month == 9 || month == 11) ? 30 : 31;
+    }
+
+    /**
+     * Days since epoch of the civil date.
+     *
+     * @param year
+     *      The year
+     * @param month
+     *      The month from 1 to 12
+     * @param day
+     *      The day of month
+     */
+    private static long toEpochDay (long year, int month, int day) {
+        long y   = month <= 2 ? year - 1 : year;
+        long era = floorDiv(y, 400);
+        long yoe = y - era * 400;
+        long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+
+        return era * 146097 + doe - 719468;
+    }
+
+    /**
+     * Civil date of the days since epoch.
+     *
+     * @param epochDay
+     *      Days since epoch
+     *
+     * @return
+     *      Year, month from 1 to 12 and day of month
+     */
+    private static long[] toCivil (long epochDay) {
+        long z   = epochDay + 719468;
+        long era = floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp  = (5 * doy + 2) / 153;
+        long day = doy - (153 * mp + 2) / 5 + 1;
+        long mon = mp < 10 ? mp + 3 : mp - 9;
+
+        return new long[] { yoe + era * 400 + (mon <= 2 ? 1 : 0), mon, day };
+    }
+
+    /**
+     * Division which rounds towards negative infinity.
+     */
+    private static long floorDiv (long x, long y) {
+        long q = x / y;
+
+        return (x % y != 0 && ((x ^ y) < 0)) ? q - 1 : q;
+    }
+
+}
@@ -0,0 +1,484 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package com.commontime.plugin.notification.notification;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads remote assets like icons and sounds in the background and keeps
+ * them in a size-bounded disk cache. Cached files are revalidated with the
+ * server using their ETag or Last-Modified date once they are older than
+ * the max age. Concurrent requests for the same URL share one download, and
+ * the number of parallel connections is bounded. Connections are kept alive
+ * so that following downloads from the same host reuse them.
+ */
+class RemoteAssetFetcher {
+
+    // Timeout to connect to the server in milliseconds
+    private static final int CONNECT_TIMEOUT = 5000;
+
+    // Timeout to read from the server in milliseconds
+    private static final int READ_TIMEOUT = 10000;
+
+    // Max number of parallel downloads
+    private static final int MAX_CONNECTIONS = 2;
+
+    // Max size of all cached files in bytes
+    private static final long MAX_CACHE_SIZE = 10 * 1024 * 1024;
+
+    // Age after which a cached file gets revalidated, 1 day
+    private static final long MAX_AGE = 24 * 60 * 60 * 1000;
+
+    // Size of the copy buffer
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    // Extension of the files holding the validators
+    private static final String META = ".meta";
+
+    // Extension of the files a download goes to before it gets renamed
+    private static final String TMP = ".tmp";
+
+    // The single instance shared by the whole process
+    private static RemoteAssetFetcher instance;
+
+    // Folder of the cached files
+    private final File dir;
+
+    // Max size of all cached files in bytes
+    private final long maxSize;
+
+    // Workers doing the downloads
+    private final ExecutorService pool;
+
+    // Running downloads by URL
+    private final ConcurrentHashMap<String, Future<File>> inflight =
+            new ConcurrentHashMap<String, Future<File>>();
+
+    /**
+     * Constructor
+     *
+     * @param dir
+     *      Folder of the cached files
+     * @param maxSize
+     *      Max size of all cached files in bytes
+     * @param connections
+     *      Max number of parallel downloads
+     */
+    RemoteAssetFetcher(File dir, long maxSize, int connections) {
+        this.dir     = dir;
+        this.maxSize = maxSize;
+        this.pool    = Executors.newFixedThreadPool(connections, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "NotificationAssetFetcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Static method to retrieve the shared instance.
+     *
+     * @param storage
+     *      Parent folder of the cache folder
+     */
+    static synchronized RemoteAssetFetcher getInstance(File storage) {
+
+        if (instance == null) {
+            instance = new RemoteAssetFetcher(new File(storage, "remote"),
+                    MAX_CACHE_SIZE, MAX_CONNECTIONS);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Cached file of the URL or null if not downloaded yet. A file older
+     * than the max age gets revalidated in the background.
+     *
+     * @param url
+     *      The remote address
+     */
+    File getCached(String url) {
+        File file = getFile(url);
+
+        if (!file.exists())
+            return null;
+
+        if (System.currentTimeMillis() - file.lastModified() > MAX_AGE) {
+            fetch(url);
+        }
+
+        return file;
+    }
+
+    /**
+     * Download the URL in the background unless a download is already
+     * running.
+     *
+     * @param url
+     *      The remote address
+     *
+     * @return
+     *      Future of the downloaded file, which is null if it failed
+     */
+    Future<File> fetch(final String url) {
+        Future<File> future = inflight.get(url);
+
+        if (future != null)
+            return future;
+
+        FutureTask<File> task = new FutureTask<File>(new Callable<File>() {
+            @Override
+            public File call() {
+                return download(url);
+            }
+        }) {
+            // Removed once the result has been published, so that callers
+            // in between still share this download instead of starting one
+            @Override
+            protected void done() {
+                inflight.remove(url, this);
+            }
+        };
+
+        future = inflight.putIfAbsent(url, task);
+
+        if (future != null)
+            return future;
+
+        pool.execute(task);
+
+        return task;
+    }
+
+    /**
+     * Downloaded file of the URL. Waits for the download if needed.
+     *
+     * @param url
+     *      The remote address
+     * @param timeout
+     *      Max time to wait in milliseconds
+     *
+     * @return
+     *      null if the download failed or took too long
+     */
+    File get(String url, long timeout) {
+        File file = getCached(url);
+
+        if (file != null)
+            return file;
+
+        try {
+            return fetch(url).get(timeout, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            Log.e("Asset", "Download failed: " + url);
+            return null;
+        }
+    }
+
+    /**
+     * Download the URL into the cache. Sends the validators of the cached
+     * file, so that the server can answer with 304 if it did not change.
+     *
+     * @param path
+     *      The remote address
+     *
+     * @return
+     *      The cached file or null if the download failed
+     */
+    private File download(String path) {
+        File file = getFile(path);
+        File meta = new File(dir, file.getName() + META);
+        HttpURLConnection connection = null;
+
+        //noinspection ResultOfMethodCallIgnored
+        dir.mkdirs();
+
+        try {
+            connection = (HttpURLConnection) new URL(path).openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+
+            if (file.exists()) {
+                String[] validators = readMeta(meta);
+
+                if (validators[0] != null) {
+                    connection.setRequestProperty("If-None-Match", validators[0]);
+                }
+
+                if (validators[1] != null) {
+                    connection.setRequestProperty("If-Modified-Since", validators[1]);
+                }
+            }
+
+            int status = connection.getResponseCode();
+
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && file.exists()) {
+                drain(connection);
+                //noinspection ResultOfMethodCallIgnored
+                file.setLastModified(System.currentTimeMillis());
+                return file;
+            }
+
+            if (status != HttpURLConnection.HTTP_OK) {
+                Log.e("Asset", "Unexpected status " + status + " for " + path);
+                drain(connection);
+                return file.exists() ? file : null;
+            }
+
+            write(connection.getInputStream(), file);
+            writeMeta(meta, connection.getHeaderField("ETag"),
+                    connection.getHeaderField("Last-Modified"));
+            trim();
+
+            return file;
+        } catch (IOException e) {
+            Log.e("Asset", "No Input can be created from http Stream");
+            e.printStackTrace();
+
+            // Only broken connections are closed, others are kept alive
+            if (connection != null) {
+                connection.disconnect();
+            }
+
+            return file.exists() ? file : null;
+        }
+    }
+
+    /**
+     * Write the stream into a temp file and rename it to the target file,
+     * so that readers never see a partial file.
+     *
+     * @param in
+     *      The stream to read from, gets closed
+     * @param file
+     *      The target file
+     */
+    private void write(InputStream in, File file) throws IOException {
+        File tmp = File.createTempFile(file.getName(), TMP, dir);
+
+        try {
+            OutputStream out = new FileOutputStream(tmp);
+
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                out.close();
+            }
+
+            if (!tmp.renameTo(file))
+                throw new IOException("Can not rename " + tmp + " to " + file);
+        } finally {
+            in.close();
+
+            if (tmp.exists()) {
+                //noinspection ResultOfMethodCallIgnored
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Read the rest of the response, so that the connection can be reused.
+     *
+     * @param connection
+     *      The open connection
+     */
+    private static void drain(HttpURLConnection connection) {
+        try {
+            InputStream in = connection.getErrorStream();
+
+            if (in == null) {
+                in = connection.getInputStream();
+            }
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+
+            //noinspection StatementWithEmptyBody
+            while (in.read(buffer) != -1) {}
+
+            in.close();
+        } catch (IOException ignore) {}
+    }
+
+    /**
+     * ETag and Last-Modified date of the cached file.
+     *
+     * @param meta
+     *      File holding the validators
+     *
+     * @return
+     *      Array with both validators, each null if unknown
+     */
+    private static String[] readMeta(File meta) {
+        String[] validators = new String[2];
+
+        if (!meta.exists())
+            return validators;
+
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(meta));
+
+            try {
+                for (int i = 0; i < validators.length; i++) {
+                    String line = reader.readLine();
+                    validators[i] = line == null || line.isEmpty() ? null : line;
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return validators;
+    }
+
+    /**
+     * Save the ETag and Last-Modified date of the cached file.
+     *
+     * @param meta
+     *      File holding the validators
+     * @param etag
+     *      The ETag or null
+     * @param lastModified
+     *      The Last-Modified date or null
+     */
+    private static void writeMeta(File meta, String etag, String lastModified) {
+        try {
+            Writer writer = new FileWriter(meta);
+
+            try {
+                writer.write((etag != null ? etag : "") + "\n"
+                        + (lastModified != null ? lastModified : "") + "\n");
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Delete the least recently validated files until the cache fits into
+     * its max size. The temp files of running downloads are left alone.
+     */
+    private synchronized void trim() {
+        File[] files = dir.listFiles();
+        long size    = 0;
+
+        if (files == null)
+            return;
+
+        for (File file : files) {
+            if (!file.getName().endsWith(TMP)) {
+                size += file.length();
+            }
+        }
+
+        if (size <= maxSize)
+            return;
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long x = a.lastModified();
+                long y = b.lastModified();
+
+                return x < y ? -1 : (x == y ? 0 : 1);
+            }
+        });
+
+        for (File file : files) {
+            if (size <= maxSize)
+                break;
+
+            if (file.getName().endsWith(META) || file.getName().endsWith(TMP))
+                continue;
+
+            File meta = new File(dir, file.getName() + META);
+
+            size -= file.length() + meta.length();
+
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            //noinspection ResultOfMethodCallIgnored
+            meta.delete();
+        }
+    }
+
+    /**
+     * Cache file of the URL, named after the hash of the URL.
+     *
+     * @param url
+     *      The remote address
+     */
+    File getFile(String url) {
+        String path = url;
+        int query   = path.indexOf('?');
+        String ext  = "";
+
+        if (query != -1) {
+            path = path.substring(0, query);
+        }
+
+        int dot = path.lastIndexOf('.');
+
+        if (dot > path.lastIndexOf('/')) {
+            ext = path.substring(dot);
+        }
+
+        return new File(dir, AssetCache.hash(url) + ext);
+    }
+
+}
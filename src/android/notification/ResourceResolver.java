@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package com.commontime.plugin.notification.notification;
+
+import android.content.Context;
+import android.content.res.Resources;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide cache of resolved resource IDs. Drawables are looked up by
+ * reflection on the R classes and by name through the resources, both of
+ * which are slow. Each name gets resolved once, unknown names are cached as
+ * well. The drawables used by the builder are resolved on creation.
+ */
+class ResourceResolver {
+
+    // Drawables resolved when the instance gets created
+    private static final String[] WARM_UP = {
+            "icon", "icontransparent", "action_hand"
+    };
+
+    // Package name of the platform resources
+    private static final String ANDROID = "android";
+
+    // The single instance shared by the whole process
+    private static ResourceResolver instance;
+
+    // Package name of the app
+    private final String pkgName;
+
+    // Resources of the app
+    private final Resources res;
+
+    // Resolved IDs by package and name, 0 if not found
+    private final Map<String, Integer> ids =
+            new ConcurrentHashMap<String, Integer>();
+
+    /**
+     * Constructor
+     *
+     * @param context
+     *      Application context
+     */
+    private ResourceResolver(Context context) {
+        this.pkgName = context.getPackageName();
+        this.res     = context.getResources();
+    }
+
+    /**
+     * Static method to retrieve the shared instance.
+     *
+     * @param context
+     *      Application context
+     */
+    static synchronized ResourceResolver getInstance(Context context) {
+
+        if (instance == null) {
+            instance = new ResourceResolver(context.getApplicationContext());
+            instance.warmUp();
+        }
+
+        return instance;
+    }
+
+    /**
+     * Resolve the drawables used by the builder.
+     */
+    private void warmUp() {
+        for (String name : WARM_UP) {
+            getDrawable(pkgName, name);
+            getIdentifier(name);
+        }
+    }
+
+    /**
+     * Resource ID of the drawable of the app or the platform.
+     *
+     * @param name
+     *      Name of the drawable
+     *
+     * @return
+     *      0 if not found
+     */
+    int getDrawable(String name) {
+        int resId = getDrawable(pkgName, name);
+
+        if (resId == 0) {
+            resId = getDrawable(ANDROID, name);
+        }
+
+        return resId;
+    }
+
+    /**
+     * Resource ID of the drawable found by reflection on the R class of
+     * the package.
+     *
+     * @param clsName
+     *      Relative package or global android name space
+     * @param name
+     *      Name of the drawable
+     *
+     * @return
+     *      0 if not found
+     */
+    int getDrawable(String clsName, String name) {
+        String key    = clsName + ":" + name;
+        Integer resId = ids.get(key);
+
+        if (resId != null)
+            return resId;
+
+        resId = 0;
+
+        try {
+            Class<?> cls = Class.forName(clsName + ".R$drawable");
+
+            resId = (Integer) cls.getDeclaredField(name).get(Integer.class);
+        } catch (Exception ignore) {}
+
+        ids.put(key, resId);
+
+        return resId;
+    }
+
+    /**
+     * Resource ID of the drawable of the app found by name.
+     *
+     * @param name
+     *      Name of the drawable
+     *
+     * @return
+     *      0 if not found
+     */
+    int getIdentifier(String name) {
+        String key    = "drawable/" + name;
+        Integer resId = ids.get(key);
+
+        if (resId != null)
+            return resId;
+
+        resId = res.getIdentifier(name, "drawable", pkgName);
+        ids.put(key, resId);
+
+        return resId;
+    }
+
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package com.commontime.plugin.notification.notification;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Restores the persisted notifications after a reboot outside of the main
+ * thread. The notifications are ordered by ID and restored in chunks by a
+ * bounded pool of workers. The checkpoint gets saved before the first
+ * chunk and moves to the highest restored ID after each chunk, so that an
+ * interrupted restore resumes with the next chunk instead of starting
+ * over. While running, an alarm resumes the restore in case the process
+ * gets killed. Each chunk moves that alarm forward, the end cancels it.
+ *
+ * The notifications are already stored, so that only their alarms get
+ * registered again.
+ */
+class RestoreTask implements Runnable {
+
+    // Key for private preferences
+    private static final String PREF_KEY = "NotificationRestore";
+
+    // Key of the boot time the checkpoint belongs to
+    private static final String BOOT = "boot";
+
+    // Key of the highest ID restored so far
+    private static final String LAST_ID = "lastId";
+
+    // Max difference between two computed boot times of the same boot
+    private static final long BOOT_TOLERANCE = 60000;
+
+    // Number of notifications restored by one worker at once
+    private static final int CHUNK_SIZE = 50;
+
+    // Max number of workers
+    private static final int MAX_WORKERS = 4;
+
+    // Delay of the alarm which resumes a killed restore
+    private static final long RESUME_DELAY = 60000;
+
+    // Application context
+    private final Context context;
+
+    // Receiver which builds and restores the notifications
+    private final AbstractRestoreReceiver receiver;
+
+    // Pending broadcast to finish when done or null
+    private final BroadcastReceiver.PendingResult result;
+
+    // Shared private preferences holding the checkpoint
+    private final SharedPreferences prefs;
+
+    /**
+     * Constructor
+     *
+     * @param context
+     *      Application context
+     * @param receiver
+     *      Receiver which builds and restores the notifications
+     * @param result
+     *      Pending broadcast to finish when done or null
+     */
+    RestoreTask(Context context, AbstractRestoreReceiver receiver,
+                BroadcastReceiver.PendingResult result) {
+
+        this.context  = context;
+        this.receiver = receiver;
+        this.result   = result;
+        this.prefs    = getPrefs(context);
+    }
+
+    /**
+     * If a restore of the current boot has been interrupted.
+     *
+     * @param context
+     *      Application context
+     */
+    static boolean isPending (Context context) {
+        SharedPreferences prefs = getPrefs(context);
+
+        return prefs.contains(LAST_ID) && isCurrentBoot(prefs.getLong(BOOT, 0));
+    }
+
+    /**
+     * Remove the checkpoint.
+     *
+     * @param context
+     *      Application context
+     */
+    static void reset (Context context) {
+        getPrefs(context).edit().clear().apply();
+    }
+
+    /**
+     * Restore all notifications which have not been restored yet.
+     */
+    @Override
+    public void run() {
+        long start = SystemClock.elapsedRealtime();
+        int count  = 0;
+
+        try {
+            count = restore();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            Metrics.restored(count, SystemClock.elapsedRealtime() - start);
+
+            if (result != null) {
+                result.finish();
+            }
+        }
+    }
+
+    /**
+     * Restore the notifications after the checkpoint chunk by chunk.
+     *
+     * @return
+     *      The number of restored notifications
+     */
+    private int restore() {
+        List<NotificationRecord> records = getRecordsToRestore();
+        int workers = Math.min(MAX_WORKERS,
+                Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, workers));
+        List<Future<Integer>> chunks = new ArrayList<Future<Integer>>();
+        int count = 0;
+
+        armResume();
+
+        try {
+            for (int i = 0; i < records.size(); i += CHUNK_SIZE) {
+                int end = Math.min(i + CHUNK_SIZE, records.size());
+                chunks.add(pool.submit(new Chunk(records.subList(i, end))));
+            }
+
+            // Chunks complete in any order, the checkpoint moves in order
+            for (int i = 0; i < chunks.size(); i++) {
+                int end = Math.min((i + 1) * CHUNK_SIZE, records.size());
+
+                count += chunks.get(i).get();
+                saveCheckpoint(records.get(end - 1).getId());
+                armResume();
+            }
+
+            reset(context);
+            cancelResume();
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return count;
+    }
+
+    /**
+     * Records ordered by ID which have not been restored by an interrupted
+     * restore of the current boot.
+     */
+    private List<NotificationRecord> getRecordsToRestore() {
+        List<NotificationRecord> records =
+                NotificationStore.getInstance(context).getAll();
+
+        Collections.sort(records, new Comparator<NotificationRecord>() {
+            @Override
+            public int compare(NotificationRecord a, NotificationRecord b) {
+                return a.getId() < b.getId() ? -1 : (a.getId() == b.getId() ? 0 : 1);
+            }
+        });
+
+        if (!isCurrentBoot(prefs.getLong(BOOT, 0)) || !prefs.contains(LAST_ID)) {
+            // Written at once so that a restore killed within the first
+            // chunk resumes too
+            prefs.edit().clear()
+                    .putLong(BOOT, getBootTime())
+                    .putInt(LAST_ID, Integer.MIN_VALUE)
+                    .commit();
+            return records;
+        }
+
+        int lastId = prefs.getInt(LAST_ID, Integer.MIN_VALUE);
+        int from   = 0;
+
+        while (from < records.size() && records.get(from).getId() <= lastId) {
+            from++;
+        }
+
+        return records.subList(from, records.size());
+    }
+
+    /**
+     * Save the highest ID restored so far.
+     *
+     * @param id
+     *      The notification ID
+     */
+    private void saveCheckpoint (int id) {
+        prefs.edit().putInt(LAST_ID, id).apply();
+    }
+
+    /**
+     * Register or move the alarm which resumes the restore if the process
+     * gets killed before the end.
+     */
+    private void armResume () {
+        getAlarmMgr().set(AlarmManager.ELAPSED_REALTIME_WAKEUP,
+                SystemClock.elapsedRealtime() + RESUME_DELAY, getResumeIntent());
+    }
+
+    /**
+     * Unregister the alarm which resumes the restore.
+     */
+    private void cancelResume () {
+        PendingIntent pi = getResumeIntent();
+
+        getAlarmMgr().cancel(pi);
+        pi.cancel();
+    }
+
+    /**
+     * Intent which sends the resume action to the restore receiver.
+     */
+    private PendingIntent getResumeIntent () {
+        Intent intent = new Intent(context, receiver.getClass())
+                .setAction(AbstractRestoreReceiver.ACTION_RESUME);
+
+        return PendingIntent.getBroadcast(
+                context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    /**
+     * Alarm manager for the application.
+     */
+    private AlarmManager getAlarmMgr () {
+        return (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+    }
+
+    /**
+     * If the boot time belongs to the current boot.
+     *
+     * @param bootTime
+     *      Boot time in milliseconds
+     */
+    private static boolean isCurrentBoot (long bootTime) {
+        return Math.abs(getBootTime() - bootTime) < BOOT_TOLERANCE;
+    }
+
+    /**
+     * Wall clock time of the current boot in milliseconds.
+     */
+    private static long getBootTime () {
+        return System.currentTimeMillis() - SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Shared private preferences holding the checkpoint.
+     *
+     * @param context
+     *      Application context
+     */
+    private static SharedPreferences getPrefs (Context context) {
+        return context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Builds and restores a chunk of notifications.
+     */
+    private class Chunk implements Callable<Integer> {
+
+        // The records to restore
+        private final List<NotificationRecord> records;
+
+        /**
+         * Constructor
+         *
+         * @param records
+         *      The records to restore
+         */
+        Chunk(List<NotificationRecord> records) {
+            this.records = records;
+        }
+
+        /**
+         * Build and restore each notification of the chunk.
+         *
+         * @return
+         *      The number of restored notifications
+         */
+        @Override
+        public Integer call() {
+            int count = 0;
+
+            for (NotificationRecord record : records) {
+                JSONObject data = record.getOptions();
+
+                if (data == null)
+                    continue;
+
+                try {
+                    Builder builder = new Builder(context, data);
+                    receiver.onRestore(receiver.buildNotification(builder));
+                    count++;
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            return count;
+        }
+
+    }
+
+}
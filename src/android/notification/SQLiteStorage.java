@@ -0,0 +1,455 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package com.commontime.plugin.notification.notification;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Storage which keeps every notification as a row of an SQLite table. Each
+ * change only touches the affected row, and the trigger date, the repeat
+ * interval and the next trigger time are indexed to answer the type and
+ * time range queries. On creation the database imports the notifications
+ * persisted by the legacy PrefsStorage.
+ */
+class SQLiteStorage extends SQLiteOpenHelper implements Storage {
+
+    // Name of the database file
+    private static final String DB_NAME = "notification.db";
+
+    // Version of the database schema
+    private static final int DB_VERSION = 1;
+
+    // Name of the table holding the notifications
+    private static final String TABLE = "notifications";
+
+    // Column names
+    private static final String COL_ID        = "id";
+    private static final String COL_AT        = "at";
+    private static final String COL_INTERVAL  = "repeat_interval";
+    private static final String COL_EVERY     = "every";
+    private static final String COL_NEXT_FIRE = "next_fire";
+    private static final String COL_OPTIONS   = "options";
+
+    // Columns to read a record
+    private static final String[] RECORD_COLUMNS = {
+            COL_ID, COL_AT, COL_EVERY, COL_NEXT_FIRE, COL_OPTIONS
+    };
+
+    // Columns to read the ID only
+    private static final String[] ID_COLUMNS = { COL_ID };
+
+    // Legacy storage to migrate from
+    private final PrefsStorage legacy;
+
+    // If the legacy storage has been imported while creating the database
+    private boolean migrated = false;
+
+    /**
+     * Constructor
+     *
+     * @param context
+     *      Application context
+     */
+    SQLiteStorage(Context context) {
+        this(context, DB_NAME);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param context
+     *      Application context
+     * @param name
+     *      Name of the database file or null for an in-memory database
+     */
+    SQLiteStorage(Context context, String name) {
+        super(context, name, null, DB_VERSION);
+
+        this.legacy = new PrefsStorage(context);
+
+        getWritableDatabase();
+
+        if (migrated) {
+            legacy.clear();
+        }
+    }
+
+    /**
+     * Called when the database is created for the first time.
+     *
+     * @param db
+     *      The database
+     */
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + COL_ID + " INTEGER PRIMARY KEY, "
+                + COL_AT + " INTEGER NOT NULL, "
+                + COL_INTERVAL + " INTEGER NOT NULL, "
+                + COL_EVERY + " TEXT NOT NULL, "
+                + COL_NEXT_FIRE + " INTEGER NOT NULL, "
+                + COL_OPTIONS + " TEXT NOT NULL)");
+
+        db.execSQL("CREATE INDEX " + TABLE + "_at ON "
+                + TABLE + " (" + COL_AT + ")");
+        db.execSQL("CREATE INDEX " + TABLE + "_interval ON "
+                + TABLE + " (" + COL_INTERVAL + ")");
+        db.execSQL("CREATE INDEX " + TABLE + "_next_fire ON "
+                + TABLE + " (" + COL_NEXT_FIRE + ")");
+
+        migrate(db);
+    }
+
+    /**
+     * Called when the database needs to be upgraded.
+     *
+     * @param db
+     *      The database
+     * @param oldVersion
+     *      The old database version
+     * @param newVersion
+     *      The new database version
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // First version of the schema, nothing to upgrade yet
+    }
+
+    /**
+     * Import the notifications persisted by the legacy storage. Runs
+     * within the transaction which creates the database.
+     *
+     * @param db
+     *      The database
+     */
+    private void migrate(SQLiteDatabase db) {
+        for (NotificationRecord record : legacy.load()) {
+            db.insertWithOnConflict(TABLE, null, toValues(record),
+                    SQLiteDatabase.CONFLICT_REPLACE);
+        }
+
+        migrated = true;
+    }
+
+    /**
+     * All persisted records.
+     */
+    @Override
+    public List<NotificationRecord> load() {
+        List<NotificationRecord> records = new ArrayList<NotificationRecord>();
+        Cursor cursor = getReadableDatabase().query(TABLE, RECORD_COLUMNS,
+                null, null, null, null, COL_ID);
+
+        try {
+            while (cursor.moveToNext()) {
+                records.add(new NotificationRecord(cursor.getInt(0),
+                        cursor.getLong(1), cursor.getString(2),
+                        cursor.getLong(3), cursor.getString(4)));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return records;
+    }
+
+    /**
+     * Add or replace the record.
+     *
+     * @param record
+     *      The notification record
+     */
+    @Override
+    public void put(NotificationRecord record) {
+        ContentValues values = toValues(record);
+
+        getWritableDatabase().insertWithOnConflict(TABLE, null, values,
+                SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Remove the record with the ID.
+     *
+     * @param id
+     *      The notification ID
+     */
+    @Override
+    public void remove(int id) {
+        getWritableDatabase().delete(TABLE, COL_ID + " = ?",
+                new String[] { Integer.toString(id) });
+    }
+
+    /**
+     * Add or replace and remove the records at once. Either all changes
+     * are written or none.
+     *
+     * @param records
+     *      The records to add or replace
+     * @param ids
+     *      The IDs of the records to remove
+     */
+    @Override
+    public void write(Collection<NotificationRecord> records,
+                      Collection<Integer> ids) {
+
+        SQLiteDatabase db = getWritableDatabase();
+
+        db.beginTransaction();
+
+        try {
+            for (NotificationRecord record : records) {
+                db.insertWithOnConflict(TABLE, null, toValues(record),
+                        SQLiteDatabase.CONFLICT_REPLACE);
+            }
+
+            for (int id : ids) {
+                db.delete(TABLE, COL_ID + " = ?",
+                        new String[] { Integer.toString(id) });
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * IDs of all records from given type.
+     *
+     * @param type
+     *      The notification life cycle type
+     * @param now
+     *      Current time in milliseconds
+     */
+    @Override
+    public List<Integer> getIdsByType(NotificationWrapper.Type type, long now) {
+        String time = Long.toString(now);
+
+        switch (type) {
+            case SCHEDULED:
+                return queryIds(COL_AT + " >= ?", time);
+            case TRIGGERED:
+                return queryIds(COL_AT + " < ?", time);
+            default:
+                return queryIds(null);
+        }
+    }
+
+    /**
+     * IDs of all records whose next trigger time is within the range.
+     *
+     * @param from
+     *      Start of the range in milliseconds, inclusive
+     * @param to
+     *      End of the range in milliseconds, exclusive
+     */
+    @Override
+    public List<Integer> getIdsBetween(long from, long to) {
+        return queryIds(COL_NEXT_FIRE + " >= ? AND " + COL_NEXT_FIRE + " < ?",
+                Long.toString(from), Long.toString(to));
+    }
+
+    /**
+     * IDs of all records which may trigger within the range: one-time
+     * records with their trigger date within the range and repeating
+     * records which start before its end. Does not depend on the stored
+     * next trigger time.
+     *
+     * @param from
+     *      Start of the range in milliseconds, inclusive
+     * @param to
+     *      End of the range in milliseconds, exclusive
+     */
+    @Override
+    public List<Integer> getIdsTriggeringBetween(long from, long to) {
+        return queryIds("(" + COL_INTERVAL + " = 0 AND " + COL_AT + " >= ? AND "
+                + COL_AT + " < ?) OR (" + COL_INTERVAL + " > 0 AND "
+                + COL_AT + " < ?)",
+                Long.toString(from), Long.toString(to), Long.toString(to));
+    }
+
+    /**
+     * IDs of the records which trigger next from the given time on,
+     * ordered by their next trigger time and ID.
+     *
+     * @param from
+     *      Start of the range in milliseconds, inclusive
+     * @param limit
+     *      Max number of IDs
+     */
+    @Override
+    public List<Integer> getNextIds(long from, int limit) {
+        List<Integer> ids = new ArrayList<Integer>();
+        Cursor cursor = getReadableDatabase().query(TABLE, ID_COLUMNS,
+                COL_NEXT_FIRE + " >= ?", new String[] { Long.toString(from) },
+                null, null, COL_NEXT_FIRE + ", " + COL_ID,
+                Integer.toString(limit));
+
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getInt(0));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return ids;
+    }
+
+    /**
+     * IDs of the records from given type which come after the position,
+     * ordered by ID or by next trigger time and ID. The position is part
+     * of the WHERE clause, so that SQLite seeks to it through the index
+     * instead of skipping the former pages.
+     *
+     * @param type
+     *      The notification life cycle type
+     * @param now
+     *      Current time in milliseconds
+     * @param byTriggerTime
+     *      If ordered by next trigger time, else by ID
+     * @param afterTime
+     *      Next trigger time of the position, ignored if ordered by ID
+     * @param afterId
+     *      ID of the position
+     * @param limit
+     *      Max number of IDs
+     */
+    @Override
+    public List<Integer> getPageIds(NotificationWrapper.Type type, long now,
+                                    boolean byTriggerTime, long afterTime,
+                                    int afterId, int limit) {
+        List<Integer> ids = new ArrayList<Integer>();
+        List<String> args = new ArrayList<String>();
+        String selection, orderBy;
+
+        if (byTriggerTime) {
+            selection = "(" + COL_NEXT_FIRE + " > ? OR (" + COL_NEXT_FIRE
+                    + " = ? AND " + COL_ID + " > ?))";
+            orderBy   = COL_NEXT_FIRE + ", " + COL_ID;
+            args.add(Long.toString(afterTime));
+            args.add(Long.toString(afterTime));
+        } else {
+            selection = COL_ID + " > ?";
+            orderBy   = COL_ID;
+        }
+
+        args.add(Integer.toString(afterId));
+
+        switch (type) {
+            case SCHEDULED:
+                selection += " AND " + COL_AT + " >= ?";
+                args.add(Long.toString(now));
+                break;
+            case TRIGGERED:
+                selection += " AND " + COL_AT + " < ?";
+                args.add(Long.toString(now));
+                break;
+            default:
+                break;
+        }
+
+        Cursor cursor = getReadableDatabase().query(TABLE, ID_COLUMNS,
+                selection, args.toArray(new String[args.size()]),
+                null, null, orderBy, Integer.toString(limit));
+
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getInt(0));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return ids;
+    }
+
+    /**
+     * Earliest next trigger time of all records or 0 if none will trigger.
+     */
+    @Override
+    public long getNextTriggerTime() {
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT MIN("
+                + COL_NEXT_FIRE + ") FROM " + TABLE + " WHERE "
+                + COL_NEXT_FIRE + " > 0", null);
+
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * IDs of all records matching the selection.
+     *
+     * @param selection
+     *      The WHERE clause or null for all records
+     * @param args
+     *      Arguments of the WHERE clause
+     */
+    private List<Integer> queryIds(String selection, String... args) {
+        List<Integer> ids = new ArrayList<Integer>();
+        Cursor cursor = getReadableDatabase().query(TABLE, ID_COLUMNS,
+                selection, args.length > 0 ? args : null, null, null, COL_ID);
+
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getInt(0));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return ids;
+    }
+
+    /**
+     * Column values for the record.
+     *
+     * @param record
+     *      The notification record
+     */
+    private ContentValues toValues(NotificationRecord record) {
+        ContentValues values = new ContentValues();
+
+        values.put(COL_ID, record.getId());
+        values.put(COL_AT, record.getTriggerTime());
+        values.put(COL_INTERVAL, record.getRepeatInterval());
+        values.put(COL_EVERY, record.getEvery());
+        values.put(COL_NEXT_FIRE, record.getNextTriggerTime());
+        values.put(COL_OPTIONS, record.toString());
+
+        return values;
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package com.commontime.plugin.notification.notification;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Backend which persists the notification records. The NotificationStore
+ * keeps all records in memory and writes every change through to the
+ * storage. Queries which depend on the trigger time are answered by the
+ * storage, so implementations should make use of indexes where possible.
+ */
+interface Storage {
+
+    /**
+     * All persisted records.
+     */
+    List<NotificationRecord> load();
+
+    /**
+     * Add or replace the record.
+     *
+     * @param record
+     *      The notification record
+     */
+    void put(NotificationRecord record);
+
+    /**
+     * Remove the record with the ID.
+     *
+     * @param id
+     *      The notification ID
+     */
+    void remove(int id);
+
+    /**
+     * Add or replace and remove the records at once. Either all changes
+     * are written or none.
+     *
+     * @param records
+     *      The records to add or replace
+     * @param ids
+     *      The IDs of the records to remove
+     */
+    void write(Collection<NotificationRecord> records, Collection<Integer> ids);
+
+    /**
+     * IDs of all records from given type.
+     *
+     * @param type
+     *      The notification life cycle type
+     * @param now
+     *      Current time in milliseconds
+     */
+    List<Integer> getIdsByType(NotificationWrapper.Type type, long now);
+
+    /**
+     * IDs of all records whose next trigger time is within the range.
+     *
+     * @param from
+     *      Start of the range in milliseconds, inclusive
+     * @param to
+     *      End of the range in milliseconds, exclusive
+     */
+    List<Integer> getIdsBetween(long from, long to);
+
+    /**
+     * IDs of all records which may trigger within the range: one-time
+     * records with their trigger date within the range and repeating
+     * records which start before its end. Does not depend on the stored
+     * next trigger time.
+     *
+     * @param from
+     *      Start of the range in milliseconds, inclusive
+     * @param to
+     *      End of the range in milliseconds, exclusive
+     */
+    List<Integer> getIdsTriggeringBetween(long from, long to);
+
+    /**
+     * IDs of the records which trigger next from the given time on,
+     * ordered by their next trigger time and ID.
+     *
+     * @param from
+     *      Start of the range in milliseconds, inclusive
+     * @param limit
+     *      Max number of IDs
+     */
+    List<Integer> getNextIds(long from, int limit);
+
+    /**
+     * IDs of the records from given type which come after the position,
+     * ordered by ID or by next trigger time and ID.
+     *
+     * @param type
+     *      The notification life cycle type
+     * @param now
+     *      Current time in milliseconds
+     * @param byTriggerTime
+     *      If ordered by next trigger time, else by ID
+     * @param afterTime
+     *      Next trigger time of the position, ignored if ordered by ID
+     * @param afterId
+     *      ID of the position
+     * @param limit
+     *      Max number of IDs
+     */
+    List<Integer> getPageIds(NotificationWrapper.Type type, long now,
+                             boolean byTriggerTime, long afterTime,
+                             int afterId, int limit);
+
+    /**
+     * Earliest next trigger time of all records or 0 if none will trigger.
+     */
+    long getNextTriggerTime();
+
+}
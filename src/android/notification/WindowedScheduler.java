@@ -0,0 +1,379 @@
+/*
+ * Copyright (c) 2013-2015 by appPlant UG. All rights reserved.
+ *
+ * @APPPLANT_LICENSE_HEADER_START@
+ *
+ * This file contains Original Code and/or Modifications of Original Code
+ * as defined in and that are subject to the Apache License
+ * Version 2.0 (the 'License'). You may not use this file except in
+ * compliance with the License. Please obtain a copy of the License at
+ * http://opensource.org/licenses/Apache-2.0/ and read it before using this
+ * file.
+ *
+ * The Original Code and all software distributed under the License are
+ * distributed on an 'AS IS' basis, WITHOUT WARRANTY OF ANY KIND, EITHER
+ * EXPRESS OR IMPLIED, AND APPLE HEREBY DISCLAIMS ALL SUCH WARRANTIES,
+ * INCLUDING WITHOUT LIMITATION, ANY WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE, QUIET ENJOYMENT OR NON-INFRINGEMENT.
+ * Please see the License for the specific language governing rights and
+ * limitations under the License.
+ *
+ * @APPPLANT_LICENSE_HEADER_END@
+ */
+
+package com.commontime.plugin.notification.notification;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Scheduler which registers alarms for the nearest notifications only. The
+ * window holds at most the configured number of notifications which trigger
+ * within the configured horizon. Whenever a notification triggers or the
+ * store changes, the window slides forward. A maintenance alarm slides it
+ * once the next notification outside of the window enters the horizon.
+ * That caps the alarms and intents held by the OS and lets a restore
+ * after reboot register the window only.
+ */
+class WindowedScheduler {
+
+    // Intent action of the maintenance alarm
+    static final String ACTION_MAINTAIN =
+            "com.commontime.plugin.notification.action.MAINTAIN";
+
+    // Key for private preferences
+    private static final String PREF_KEY = "NotificationWindow";
+
+    // Signatures of the registered alarms by notification ID, null if not loaded
+    private static Map<Integer, String> armed;
+
+    // Trigger time of the maintenance alarm, 0 if none
+    private static long maintainAt = 0;
+
+    // Application context passed by constructor
+    private final Context context;
+
+    // Shared private preferences holding the registered alarms
+    private final SharedPreferences prefs;
+
+    /**
+     * Constructor
+     *
+     * @param context
+     *      Application context
+     */
+    private WindowedScheduler(Context context) {
+        this.context = context;
+        this.prefs   = context.getSharedPreferences(PREF_KEY, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Static method to retrieve class instance.
+     *
+     * @param context
+     *      Application context
+     */
+    static WindowedScheduler getInstance(Context context) {
+        return new WindowedScheduler(context);
+    }
+
+    /**
+     * Register the alarms of the notifications which have entered the window
+     * and unregister the ones which have left it. Alarms of unchanged
+     * notifications are kept.
+     *
+     * @param receiver
+     *      Receiver to handle the trigger event
+     */
+    void slide(Class<?> receiver) {
+        Config config = Config.getInstance(context);
+        int size      = config.getWindowSize();
+        long end      = System.currentTimeMillis() + config.getWindowHorizon();
+
+        // The window is read under the lock, so that concurrent slides
+        // can't leave the alarms of an outdated window behind
+        synchronized (WindowedScheduler.class) {
+            Map<Integer, NotificationRecord> window =
+                    new LinkedHashMap<Integer, NotificationRecord>();
+            long maintenance = 0;
+
+            // Overdue notifications are part of the window to trigger at once
+            for (NotificationRecord record : getStore().getNext(1, size + 1)) {
+                long time = record.getNextTriggerTime();
+
+                if (window.size() < size && time < end) {
+                    window.put(record.getId(), record);
+                } else {
+                    maintenance = time >= end
+                            ? time - config.getWindowHorizon() : 0;
+                    break;
+                }
+            }
+
+            Map<Integer, String> alarms = getArmed();
+            SharedPreferences.Editor editor = prefs.edit();
+
+            for (Integer id : new ArrayList<Integer>(alarms.keySet())) {
+                if (!window.containsKey(id)) {
+                    unregister(id, receiver);
+                    alarms.remove(id);
+                    editor.remove(id.toString());
+                }
+            }
+
+            for (NotificationRecord record : window.values()) {
+                String signature = getSignature(record);
+
+                if (!signature.equals(alarms.get(record.getId()))) {
+                    register(record, receiver);
+                    alarms.put(record.getId(), signature);
+                    editor.putString(Integer.toString(record.getId()), signature);
+                }
+            }
+
+            editor.apply();
+            maintain(maintenance, receiver);
+        }
+    }
+
+    /**
+     * Unregister the alarm of the notification, e.g. because it has been
+     * canceled or its options have been changed.
+     *
+     * @param id
+     *      The notification ID
+     * @param receiver
+     *      Receiver to handle the trigger event
+     */
+    void release(int id, Class<?> receiver) {
+        release(Collections.singletonList(id), receiver);
+    }
+
+    /**
+     * Unregister the alarms of the notifications at once, e.g. because they
+     * have been canceled or their options have been changed together.
+     *
+     * @param ids
+     *      The notification IDs
+     * @param receiver
+     *      Receiver to handle the trigger event
+     */
+    void release(Collection<Integer> ids, Class<?> receiver) {
+        SharedPreferences.Editor editor = prefs.edit();
+        boolean changed = false;
+
+        synchronized (WindowedScheduler.class) {
+            for (int id : ids) {
+                if (getArmed().remove(id) == null)
+                    continue;
+
+                unregister(id, receiver);
+                editor.remove(Integer.toString(id));
+                changed = true;
+            }
+
+            if (changed) {
+                editor.apply();
+            }
+        }
+    }
+
+    /**
+     * Called when the alarm of a notification has been received. Moves its
+     * next trigger time forward and slides the window.
+     *
+     * @param id
+     *      The notification ID
+     * @param receiver
+     *      Receiver to handle the trigger event
+     */
+    void onTriggered(int id, Class<?> receiver) {
+        NotificationRecord record = getStore().get(id);
+
+        synchronized (WindowedScheduler.class) {
+            // The one-time alarm has been consumed by the OS
+            if (getArmed().remove(id) != null) {
+                prefs.edit().remove(Integer.toString(id)).apply();
+            }
+        }
+
+        if (record != null) {
+            getStore().advance(Collections.singletonList(record),
+                    System.currentTimeMillis());
+        }
+
+        slide(receiver);
+    }
+
+    /**
+     * Called when the maintenance alarm has been received.
+     *
+     * @param receiver
+     *      Receiver to handle the trigger event
+     */
+    void onMaintain(Class<?> receiver) {
+
+        synchronized (WindowedScheduler.class) {
+            maintainAt = 0;
+        }
+
+        slide(receiver);
+    }
+
+    /**
+     * Unregister all alarms of the window and the maintenance alarm.
+     *
+     * @param receiver
+     *      Receiver to handle the trigger event
+     */
+    void clear(Class<?> receiver) {
+
+        synchronized (WindowedScheduler.class) {
+            for (Integer id : getArmed().keySet()) {
+                unregister(id, receiver);
+            }
+
+            maintain(0, receiver);
+            reset();
+        }
+    }
+
+    /**
+     * Forget the registered alarms without unregistering them, since the
+     * OS has already dropped them on reboot.
+     */
+    void reset() {
+
+        synchronized (WindowedScheduler.class) {
+            armed      = new HashMap<Integer, String>();
+            maintainAt = 0;
+            prefs.edit().clear().apply();
+        }
+    }
+
+    /**
+     * Register, move or unregister the maintenance alarm.
+     *
+     * @param time
+     *      Trigger time in milliseconds or 0 to unregister the alarm
+     * @param receiver
+     *      Receiver to handle the trigger event
+     */
+    private void maintain(long time, Class<?> receiver) {
+
+        if (time == maintainAt)
+            return;
+
+        Intent intent = new Intent(context, receiver)
+                .setAction(ACTION_MAINTAIN);
+
+        PendingIntent pi = PendingIntent.getBroadcast(
+                context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        if (time == 0) {
+            getAlarmMgr().cancel(pi);
+            Metrics.alarmCanceled();
+        } else {
+            getAlarmMgr().set(AlarmManager.RTC_WAKEUP, time, pi);
+            Metrics.alarmRegistered();
+        }
+
+        maintainAt = time;
+    }
+
+    /**
+     * Register the one-time alarm for the next trigger of the notification.
+     * The intent looks like the one of the default scheduler, so that the
+     * trigger receiver handles both the same way.
+     *
+     * @param record
+     *      The notification record
+     * @param receiver
+     *      Receiver to handle the trigger event
+     */
+    private void register(NotificationRecord record, Class<?> receiver) {
+        Intent intent = Options.putExtras(context, new Intent(context, receiver)
+                .setAction(Integer.toString(record.getId())),
+                record.getId(), record.toString());
+
+        PendingIntent pi = PendingIntents.getTrigger(
+                context, intent, record.getId());
+
+        getAlarmMgr().set(AlarmManager.RTC_WAKEUP,
+                record.getNextTriggerTime(), pi);
+
+        Metrics.alarmRegistered();
+    }
+
+    /**
+     * Unregister the alarm of the notification.
+     *
+     * @param id
+     *      The notification ID
+     * @param receiver
+     *      Receiver to handle the trigger event
+     */
+    private void unregister(int id, Class<?> receiver) {
+        PendingIntents.cancelTrigger(context, receiver, id);
+
+        Metrics.alarmCanceled();
+    }
+
+    /**
+     * Registered alarms, loaded from the preferences on first access.
+     */
+    private Map<Integer, String> getArmed() {
+
+        if (armed != null)
+            return armed;
+
+        armed = new HashMap<Integer, String>();
+
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            try {
+                armed.put(Integer.parseInt(entry.getKey()),
+                        String.valueOf(entry.getValue()));
+            } catch (NumberFormatException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return armed;
+    }
+
+    /**
+     * Identifies the registered alarm of a record. Changes if the trigger
+     * time or the options of the notification change.
+     *
+     * @param record
+     *      The notification record
+     */
+    private static String getSignature(NotificationRecord record) {
+        return record.getNextTriggerTime() + "/" + record.toString().hashCode();
+    }
+
+    /**
+     * Process-wide store of the persisted notifications.
+     */
+    private NotificationStore getStore() {
+        return NotificationStore.getInstance(context);
+    }
+
+    /**
+     * Alarm manager for the application.
+     */
+    private AlarmManager getAlarmMgr() {
+        return (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+    }
+
+}
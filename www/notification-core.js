@@ -274,6 +274,8 @@ exports.getTriggeredIds = function (callback, scope) {
  *
  * @param {Number[]?} ids
  *      Set of notification IDs
+ * @param {Object?} query
+ *      The fields to return like { fields: ['id', 'title'] }
  * @param {Function} callback
  *      A callback function to be called with the list
  * @param {Object?} scope
@@ -282,34 +284,48 @@ exports.getTriggeredIds = function (callback, scope) {
 exports.get = function () {
     var args = Array.apply(null, arguments);
 
-    if (typeof args[0] == 'function') {
+    if (typeof args[0] == 'function' || this.isQuery(args[0])) {
         args.unshift([]);
     }
 
+    if (!this.isQuery(args[1])) {
+        args.splice(1, 0, null);
+    }
+
     var ids      = args[0],
-        callback = args[1],
-        scope    = args[2];
+        query    = args[1],
+        callback = args[2],
+        scope    = args[3];
 
     if (!Array.isArray(ids)) {
-        this.exec('getSingle', Number(ids), callback, scope);
+        this.execQuery('getSingle', Number(ids), query, callback, scope);
         return;
     }
 
     ids = this.convertIds(ids);
 
-    this.exec('getAll', ids, callback, scope);
+    this.execQuery('getAll', ids, query, callback, scope);
 };
 
 /**
  * Property list for all local notifications.
  *
+ * @param {Object?} query
+ *      The fields to return like { fields: ['id', 'title'] }
  * @param {Function} callback
  *      A callback function to be called with the list
  * @param {Object?} scope
  *      The scope for the callback function
  */
-exports.getAll = function (callback, scope) {
-    this.exec('getAll', null, callback, scope);
+exports.getAll = function (query, callback, scope) {
+
+    if (typeof query == 'function') {
+        scope    = callback;
+        callback = query;
+        query    = null;
+    }
+
+    this.execQuery('getAll', null, query, callback, scope);
 };
 
 /**
@@ -318,6 +334,8 @@ exports.getAll = function (callback, scope) {
  *
  * @param {Number[]?} ids
  *      Set of notification IDs
+ * @param {Object?} query
+ *      The fields to return like { fields: ['id', 'title'] }
  * @param {Function} callback
  *      A callback function to be called with the list
  * @param {Object?} scope
@@ -326,38 +344,52 @@ exports.getAll = function (callback, scope) {
 exports.getScheduled = function () {
     var args = Array.apply(null, arguments);
 
-    if (typeof args[0] == 'function') {
+    if (typeof args[0] == 'function' || this.isQuery(args[0])) {
         args.unshift([]);
     }
 
+    if (!this.isQuery(args[1])) {
+        args.splice(1, 0, null);
+    }
+
     var ids      = args[0],
-        callback = args[1],
-        scope    = args[2];
+        query    = args[1],
+        callback = args[2],
+        scope    = args[3];
 
     if (!Array.isArray(ids)) {
         ids = [ids];
     }
 
     if (!Array.isArray(ids)) {
-        this.exec('getSingleScheduled', Number(ids), callback, scope);
+        this.execQuery('getSingleScheduled', Number(ids), query, callback, scope);
         return;
     }
 
     ids = this.convertIds(ids);
 
-    this.exec('getScheduled', ids, callback, scope);
+    this.execQuery('getScheduled', ids, query, callback, scope);
 };
 
 /**
  * Property list for all scheduled notifications.
  *
+ * @param {Object?} query
+ *      The fields to return like { fields: ['id', 'title'] }
  * @param {Function} callback
  *      A callback function to be called with the list
  * @param {Object?} scope
  *      The scope for the callback function
  */
-exports.getAllScheduled = function (callback, scope) {
-    this.exec('getScheduled', null, callback, scope);
+exports.getAllScheduled = function (query, callback, scope) {
+
+    if (typeof query == 'function') {
+        scope    = callback;
+        callback = query;
+        query    = null;
+    }
+
+    this.execQuery('getScheduled', null, query, callback, scope);
 };
 
 /**
@@ -366,6 +398,8 @@ exports.getAllScheduled = function (callback, scope) {
  *
  * @param {Number[]?} ids
  *      Set of notification IDs
+ * @param {Object?} query
+ *      The fields to return like { fields: ['id', 'title'] }
  * @param {Function} callback
  *      A callback function to be called with the list
  * @param {Object?} scope
@@ -374,38 +408,145 @@ exports.getAllScheduled = function (callback, scope) {
 exports.getTriggered = function () {
     var args = Array.apply(null, arguments);
 
-    if (typeof args[0] == 'function') {
+    if (typeof args[0] == 'function' || this.isQuery(args[0])) {
         args.unshift([]);
     }
 
+    if (!this.isQuery(args[1])) {
+        args.splice(1, 0, null);
+    }
+
     var ids      = args[0],
-        callback = args[1],
-        scope    = args[2];
+        query    = args[1],
+        callback = args[2],
+        scope    = args[3];
 
     if (!Array.isArray(ids)) {
         ids = [ids];
     }
 
     if (!Array.isArray(ids)) {
-        this.exec('getSingleTriggered', Number(ids), callback, scope);
+        this.execQuery('getSingleTriggered', Number(ids), query, callback, scope);
         return;
     }
 
     ids = this.convertIds(ids);
 
-    this.exec('getTriggered', ids, callback, scope);
+    this.execQuery('getTriggered', ids, query, callback, scope);
 };
 
 /**
  * Property list for all triggered notifications.
  *
+ * @param {Object?} query
+ *      The fields to return like { fields: ['id', 'title'] }
  * @param {Function} callback
  *      A callback function to be called with the list
  * @param {Object?} scope
  *      The scope for the callback function
  */
-exports.getAllTriggered = function (callback, scope) {
-    this.exec('getTriggered', null, callback, scope);
+exports.getAllTriggered = function (query, callback, scope) {
+
+    if (typeof query == 'function') {
+        scope    = callback;
+        callback = query;
+        query    = null;
+    }
+
+    this.execQuery('getTriggered', null, query, callback, scope);
+};
+
+/**
+ * Property list for the local notifications which match the filter.
+ * Android evaluates the filter natively, so that only the matches cross
+ * the bridge. Other platforms compare the range with the trigger date
+ * instead of the next trigger time.
+ *
+ * @param {Object} filter
+ *      The filter like { type: 'scheduled', repeating: false,
+ *      at: { from: Date, to: Date }, where: { 'data.patientId': 'X' },
+ *      fields: ['id', 'title'] }
+ * @param {Function} callback
+ *      A callback function to be called with the list
+ * @param {Object?} scope
+ *      The scope for the callback function
+ */
+exports.query = function (filter, callback, scope) {
+    var fn     = this.createCallbackFn(callback, scope),
+        action = 'getAll',
+        me     = this;
+
+    filter = this.convertFilter(filter);
+
+    if (device.platform == 'Android') {
+        exec(fn, null, 'Notification', 'query', [filter]);
+        return;
+    }
+
+    if (filter.type == 'scheduled') {
+        action = 'getScheduled';
+    } else if (filter.type == 'triggered') {
+        action = 'getTriggered';
+    }
+
+    this.exec(action, null, function (notifications) {
+        var matches = (notifications || []).filter(function (options) {
+            return me.matchesFilter(options, filter);
+        });
+
+        if (fn) fn(filter.fields ? me.project(matches, filter.fields) : matches);
+    });
+};
+
+/**
+ * One page of the property list for all local notifications (Android).
+ * Other platforms return all notifications within a single page.
+ *
+ * @param {Object?} options
+ *      The page size, the order (id or trigger), the cursor returned
+ *      with the former page and the fields to return
+ * @param {Function} callback
+ *      A callback function to be called with the notifications and the
+ *      cursor of the next page, which is null after the last page
+ * @param {Object?} scope
+ *      The scope for the callback function
+ */
+exports.getAllPage = function (options, callback, scope) {
+    this.execPage('getAll', options, callback, scope);
+};
+
+/**
+ * One page of the property list for all scheduled notifications (Android).
+ * Other platforms return all notifications within a single page.
+ *
+ * @param {Object?} options
+ *      The page size, the order (id or trigger), the cursor returned
+ *      with the former page and the fields to return
+ * @param {Function} callback
+ *      A callback function to be called with the notifications and the
+ *      cursor of the next page, which is null after the last page
+ * @param {Object?} scope
+ *      The scope for the callback function
+ */
+exports.getScheduledPage = function (options, callback, scope) {
+    this.execPage('getScheduled', options, callback, scope);
+};
+
+/**
+ * One page of the property list for all triggered notifications (Android).
+ * Other platforms return all notifications within a single page.
+ *
+ * @param {Object?} options
+ *      The page size, the order (id or trigger), the cursor returned
+ *      with the former page and the fields to return
+ * @param {Function} callback
+ *      A callback function to be called with the notifications and the
+ *      cursor of the next page, which is null after the last page
+ * @param {Object?} scope
+ *      The scope for the callback function
+ */
+exports.getTriggeredPage = function (options, callback, scope) {
+    this.execPage('getTriggered', options, callback, scope);
 };
 
 /**
@@ -454,7 +595,31 @@ exports.registerPermission = function (callback, scope) {
 };
 
 /**
- * Get Registered categories (iOS only).
+ * Register categories which notifications reference by their identifier
+ * (Android only). The actions get compiled once instead of with each
+ * notification. iOS registers the categories of scheduled notifications.
+ *
+ * @param {Object[]} categories
+ *      The categories with identifier and actions
+ * @param {Function} callback
+ *      The function to be exec as the callback
+ * @param {Object?} scope
+ *      The callback function's scope
+ */
+exports.registerCategories = function (categories, callback, scope) {
+
+    var fn = this.createCallbackFn(callback, scope);
+
+    if (device.platform != 'Android') {
+        fn(true);
+        return;
+    }
+
+    exec(fn, null, 'Notification', 'registerCategories', [categories || []]);
+};
+
+/**
+ * Get Registered categories (iOS and Android).
  *
  * @param {Function} callback
  *      The function to be exec as the callback
@@ -466,27 +631,29 @@ exports.getRegisteredCategories = function (callback, scope) {
 };
 
 /**
- * Remove registered categories (iOS only).
+ * Remove registered categories (iOS and Android).
  *
+ * @param {String[]} categories
+ *      The identifiers of the categories
  * @param {Function} callback
  *      The function to be exec as the callback
  * @param {Object?} scope
  *      The callback function's scope
  */
-exports.removeRegisteredCategories = function (callback, scope) {
+exports.removeRegisteredCategories = function (categories, callback, scope) {
     
     var fn = this.createCallbackFn(callback, scope);
 
-    if (device.platform != 'iOS') {
+    if (device.platform != 'iOS' && device.platform != 'Android') {
         fn(true);
         return;
     }
 
-    exec(fn, null, 'Notification', 'removeRegisteredCategories');
+    exec(fn, null, 'Notification', 'removeRegisteredCategories', categories || []);
 };
 
 /**
- * Remove all registered categories (iOS only).
+ * Remove all registered categories (iOS and Android).
  *
  * @param {Function} callback
  *      The function to be exec as the callback
@@ -497,7 +664,7 @@ exports.clearRegisteredCategories = function (callback, scope) {
     
     var fn = this.createCallbackFn(callback, scope);
 
-    if (device.platform != 'iOS') {
+    if (device.platform != 'iOS' && device.platform != 'Android') {
         fn(true);
         return;
     }
@@ -505,6 +672,68 @@ exports.clearRegisteredCategories = function (callback, scope) {
     exec(fn, null, 'Notification', 'clearRegisteredCategories');
 };
 
+/**
+ * Change the plugin settings (Android only).
+ *
+ * @param {Object} settings
+ *      scheduler: 'default' registers one alarm per notification,
+ *                 'coalescing' registers one alarm for the earliest one,
+ *                 'windowed' registers alarms for the nearest ones only
+ *      windowSize: Max number of alarms in windowed mode
+ *      windowHorizon: Seconds ahead covered by alarms in windowed mode
+ *      payload: 'options' adds the options to the intents of the OS,
+ *               'id' adds the notification ID only
+ *      eventBatchSize: Max number of events delivered at once
+ *      eventFlushInterval: Milliseconds events get collected before delivery
+ *      eventQueueSize: Max number of events buffered before deviceready
+ *      eventOverflow: 'dropOldest' drops the oldest event if the buffer is
+ *                     full, 'collapse' the oldest one of the same type
+ *                     and notification
+ *      eventJournal: Keep buffered events in a file to survive process death
+ * @param {Function} callback
+ *      A function to be called with the current settings
+ * @param {Object?} scope
+ *      The scope for the callback function
+ */
+exports.configure = function (settings, callback, scope) {
+    this.exec('configure', settings || {}, callback, scope);
+};
+
+/**
+ * Create a notification channel unless it exists already (Android only).
+ * Notifications get posted to it through their channel property.
+ *
+ * @param {Object} channel
+ *      id: The ID of the channel
+ *      name: The name shown in the settings of the app
+ *      description: The description shown in the settings of the app
+ *      importance: 'min', 'low', 'default', 'high' or 'max'
+ *      sound: The local sound, empty for none. Remote URLs are rejected
+ *      vibrate: If notifications vibrate
+ *      badge: If notifications show a badge
+ *      group: The ID of the channel group
+ *      groupName: The name of the channel group
+ * @param {Function} callback
+ *      A function to be called after the channel has been created
+ * @param {Object?} scope
+ *      The scope for the callback function
+ */
+exports.createChannel = function (channel, callback, scope) {
+    this.exec('createChannel', channel, callback, scope);
+};
+
+/**
+ * Counters like the number of registered alarms and wakeups (Android only).
+ *
+ * @param {Function} callback
+ *      A function to be called with the counters
+ * @param {Object?} scope
+ *      The scope for the callback function
+ */
+exports.getMetrics = function (callback, scope) {
+    this.exec('getMetrics', null, callback, scope);
+};
+
 // Call this if you want to show toast notification on WP8
 exports.showToastNotification = function (callback, errorCallback, options) {
     if (typeof callback !== "function")
@@ -67,6 +67,7 @@ exports.applyPlatformSpecificOptions = function () {
         defaults.ongoing   = false;
         defaults.autoClear = true;
         defaults.led       = 'FFFFFF';
+        defaults.channel   = undefined;
         break;
     }
 
@@ -255,6 +256,18 @@ exports.fireEvent = function (event) {
     }
 };
 
+/**
+ * Fire the events delivered together by the native side.
+ *
+ * @param {Array[]} events
+ *      The events, each as list of the event name and its arguments
+ */
+exports.fireEvents = function (events) {
+    for (var i = 0; i < events.length; i++) {
+        this.fireEvent.apply(this, events[i]);
+    }
+};
+
 /**
  * Execute the native counterpart.
  *
@@ -280,6 +293,200 @@ exports.exec = function (action, args, callback, scope) {
     exec(fn, null, 'Notification', action, params);
 };
 
+/**
+ * If the argument is a query like { fields: ['id', 'title'] }.
+ *
+ * @param {Object} obj
+ *      Any argument passed to a query action
+ *
+ * @return {Boolean}
+ */
+exports.isQuery = function (obj) {
+    return !!obj && typeof obj == 'object' && !Array.isArray(obj);
+};
+
+/**
+ * Only the given fields of the notification options.
+ *
+ * @param {Object|Object[]} result
+ *      The options or the list of options
+ * @param {String[]} fields
+ *      The fields to keep
+ *
+ * @return {Object|Object[]}
+ */
+exports.project = function (result, fields) {
+
+    if (Array.isArray(result)) {
+        return result.map(function (options) {
+            return this.project(options, fields);
+        }, this);
+    }
+
+    if (!result || typeof result != 'object')
+        return result;
+
+    var options = {};
+
+    for (var i = 0; i < fields.length; i++) {
+        if (result.hasOwnProperty(fields[i])) {
+            options[fields[i]] = result[fields[i]];
+        }
+    }
+
+    return options;
+};
+
+/**
+ * Copy of the filter with the dates of the range converted to
+ * milliseconds.
+ *
+ * @param {Object?} filter
+ *      The filter passed to query
+ *
+ * @return {Object}
+ */
+exports.convertFilter = function (filter) {
+    var copy = {};
+
+    for (var key in filter) {
+        if (filter.hasOwnProperty(key)) {
+            copy[key] = filter[key];
+        }
+    }
+
+    if (typeof copy.at == 'object' && copy.at) {
+        copy.at = {
+            from: copy.at.from instanceof Date ? copy.at.from.getTime() : copy.at.from,
+            to:   copy.at.to instanceof Date ? copy.at.to.getTime() : copy.at.to
+        };
+    }
+
+    return copy;
+};
+
+/**
+ * If the options match the filter. Used by platforms which cannot
+ * evaluate the filter natively.
+ *
+ * @param {Object} options
+ *      The notification options
+ * @param {Object} filter
+ *      The converted filter
+ *
+ * @return {Boolean}
+ */
+exports.matchesFilter = function (options, filter) {
+    var where = filter.where || {},
+        at    = (options.at || 0) * 1000;
+
+    if (typeof filter.repeating == 'boolean' &&
+        filter.repeating != !!(options.every && options.every != '0'))
+        return false;
+
+    if (filter.at) {
+        if (filter.at.from != null && at < filter.at.from)
+            return false;
+
+        if (filter.at.to != null && at >= filter.at.to)
+            return false;
+    }
+
+    for (var field in where) {
+        if (!where.hasOwnProperty(field))
+            continue;
+
+        var node = options,
+            keys = field.split('.');
+
+        for (var i = 0; i < keys.length && node != null; i++) {
+            if (typeof node == 'string') {
+                try {
+                    node = JSON.parse(node);
+                } catch (e) {
+                    node = null;
+                    break;
+                }
+            }
+
+            node = typeof node == 'object' && node ? node[keys[i]] : undefined;
+        }
+
+        if (where[field] === null ? node != null : String(node) !== String(where[field]))
+            return false;
+    }
+
+    return true;
+};
+
+/**
+ * Execute the native query action. Android extracts the fields of the
+ * query natively, so that only these cross the bridge. Other platforms
+ * drop the remaining fields afterwards.
+ *
+ * @param {String} action
+ *      The name of the query action like getAll
+ * @param {Number|Number[]} ids
+ *      The notification ID or IDs
+ * @param {Object?} query
+ *      The fields to return like { fields: ['id', 'title'] }
+ * @param {Function} callback
+ *      The callback function for the result
+ * @param {Object?} scope
+ *      The scope for the function
+ */
+exports.execQuery = function (action, ids, query, callback, scope) {
+    var fields = query && query.fields,
+        fn     = this.createCallbackFn(callback, scope),
+        me     = this;
+
+    if (!Array.isArray(fields)) {
+        this.exec(action, ids, callback, scope);
+        return;
+    }
+
+    if (device.platform == 'Android') {
+        this.exec(action, [].concat(ids === null ? [] : ids, { fields: fields }), fn);
+        return;
+    }
+
+    this.exec(action, ids, function (result) {
+        if (fn) fn(me.project(result, fields));
+    });
+};
+
+/**
+ * Execute the paginated variant of the native query action. Platforms
+ * without pagination return the full list as the only page.
+ *
+ * @param {String} action
+ *      The name of the query action like getAll
+ * @param {Object?} options
+ *      The page size, the order, the cursor of the former page and
+ *      the fields to return
+ * @param {Function} callback
+ *      The callback function for the page
+ * @param {Object?} scope
+ *      The scope for the function
+ */
+exports.execPage = function (action, options, callback, scope) {
+    var fn = this.createCallbackFn(callback, scope);
+
+    if (typeof options == 'function') {
+        fn = this.createCallbackFn(options, callback);
+        options = {};
+    }
+
+    if (device.platform != 'Android') {
+        this.execQuery(action, null, options, function (notifications) {
+            if (fn) fn({ notifications: notifications, cursor: null });
+        });
+        return;
+    }
+
+    exec(fn, null, 'Notification', action + 'Page', [options || {}]);
+};
+
 
 /*********
  * HOOKS *
@@ -287,6 +494,14 @@ exports.exec = function (action, args, callback, scope) {
 
 // Called after 'deviceready' event
 channel.deviceready.subscribe(function () {
+    // Receive the events over a callback which is kept alive
+    // instead of having them evaluated by the web view.
+    if (device.platform == 'Android') {
+        exec(function (events) {
+            cordova.plugins.notification.core.fireEvents(events);
+        }, null, 'Notification', 'subscribe', []);
+    }
+
     // Device is ready now, the listeners are registered
     // and all queued events can be executed.
     exec(null, null, 'Notification', 'deviceready', []);
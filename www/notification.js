@@ -215,6 +215,8 @@ exports.getTriggeredIds = function (callback, scope) {
  *
  * @param {Number[]?} ids
  *      Set of notification IDs
+ * @param {Object?} query
+ *      The fields to return like { fields: ['id', 'title'] }
  * @param {Function} callback
  *      A callback function to be called with the list
  * @param {Object?} scope
@@ -227,13 +229,15 @@ exports.get = function () {
 /**
  * Property list for all local notifications.
  *
+ * @param {Object?} query
+ *      The fields to return like { fields: ['id', 'title'] }
  * @param {Function} callback
  *      A callback function to be called with the list
  * @param {Object?} scope
  *      The scope for the callback function
  */
-exports.getAll = function (callback, scope) {
-    this.core.getAll(callback, scope);
+exports.getAll = function () {
+    this.core.getAll.apply(this.core, arguments);
 };
 
 /**
@@ -242,6 +246,8 @@ exports.getAll = function (callback, scope) {
  *
  * @param {Number[]?} ids
  *      Set of notification IDs
+ * @param {Object?} query
+ *      The fields to return like { fields: ['id', 'title'] }
  * @param {Function} callback
  *      A callback function to be called with the list
  * @param {Object?} scope
@@ -254,13 +260,15 @@ exports.getScheduled = function () {
 /**
  * Property list for all scheduled notifications.
  *
+ * @param {Object?} query
+ *      The fields to return like { fields: ['id', 'title'] }
  * @param {Function} callback
  *      A callback function to be called with the list
  * @param {Object?} scope
  *      The scope for the callback function
  */
-exports.getAllScheduled = function (callback, scope) {
-    this.core.getAllScheduled(callback, scope);
+exports.getAllScheduled = function () {
+    this.core.getAllScheduled.apply(this.core, arguments);
 };
 
 /**
@@ -269,6 +277,8 @@ exports.getAllScheduled = function (callback, scope) {
  *
  * @param {Number[]?} ids
  *      Set of notification IDs
+ * @param {Object?} query
+ *      The fields to return like { fields: ['id', 'title'] }
  * @param {Function} callback
  *      A callback function to be called with the list
  * @param {Object?} scope
@@ -281,13 +291,81 @@ exports.getTriggered = function () {
 /**
  * Property list for all triggered notifications.
  *
+ * @param {Object?} query
+ *      The fields to return like { fields: ['id', 'title'] }
  * @param {Function} callback
  *      A callback function to be called with the list
  * @param {Object?} scope
  *      The scope for the callback function
  */
-exports.getAllTriggered = function (callback, scope) {
-    this.core.getAllTriggered(callback, scope);
+exports.getAllTriggered = function () {
+    this.core.getAllTriggered.apply(this.core, arguments);
+};
+
+/**
+ * Property list for the local notifications which match the filter.
+ * The range matches notifications which trigger within it, including
+ * later occurrences of repeating notifications.
+ *
+ * @param {Object} filter
+ *      The filter like { type: 'scheduled', repeating: false,
+ *      at: { from: Date, to: Date }, where: { 'data.patientId': 'X' },
+ *      fields: ['id', 'title'] }
+ * @param {Function} callback
+ *      A callback function to be called with the list
+ * @param {Object?} scope
+ *      The scope for the callback function
+ */
+exports.query = function (filter, callback, scope) {
+    this.core.query(filter, callback, scope);
+};
+
+/**
+ * One page of the property list for all local notifications.
+ *
+ * @param {Object?} options
+ *      The page size, the order (id or trigger), the cursor returned
+ *      with the former page and the fields to return
+ * @param {Function} callback
+ *      A callback function to be called with the notifications and the
+ *      cursor of the next page, which is null after the last page
+ * @param {Object?} scope
+ *      The scope for the callback function
+ */
+exports.getAllPage = function (options, callback, scope) {
+    this.core.getAllPage(options, callback, scope);
+};
+
+/**
+ * One page of the property list for all scheduled notifications.
+ *
+ * @param {Object?} options
+ *      The page size, the order (id or trigger), the cursor returned
+ *      with the former page and the fields to return
+ * @param {Function} callback
+ *      A callback function to be called with the notifications and the
+ *      cursor of the next page, which is null after the last page
+ * @param {Object?} scope
+ *      The scope for the callback function
+ */
+exports.getScheduledPage = function (options, callback, scope) {
+    this.core.getScheduledPage(options, callback, scope);
+};
+
+/**
+ * One page of the property list for all triggered notifications.
+ *
+ * @param {Object?} options
+ *      The page size, the order (id or trigger), the cursor returned
+ *      with the former page and the fields to return
+ * @param {Function} callback
+ *      A callback function to be called with the notifications and the
+ *      cursor of the next page, which is null after the last page
+ * @param {Object?} scope
+ *      The scope for the callback function
+ */
+exports.getTriggeredPage = function (options, callback, scope) {
+    this.core.getTriggeredPage(options, callback, scope);
 };
 
 /**
@@ -315,7 +393,22 @@ exports.registerPermission = function (callback, scope) {
 };
 
 /**
- * Get Registered categories (iOS only).
+ * Register categories which notifications reference by their identifier
+ * (Android only).
+ *
+ * @param {Object[]} categories
+ *      The categories with identifier and actions
+ * @param {Function} callback
+ *      The function to be exec as the callback
+ * @param {Object?} scope
+ *      The callback function's scope
+ */
+exports.registerCategories = function (categories, callback, scope) {
+    this.core.registerCategories(categories, callback, scope);
+};
+
+/**
+ * Get Registered categories (iOS and Android).
  *
  * @param {Function} callback
  *      The function to be exec as the callback
@@ -327,8 +420,10 @@ exports.getRegisteredCategories = function (callback, scope) {
 };
 
 /**
- * Remove registered categories (iOS only).
+ * Remove registered categories (iOS and Android).
  *
+ * @param {String[]} categories
+ *      The identifiers of the categories
  * @param {Function} callback
  *      The function to be exec as the callback
  * @param {Object?} scope
@@ -339,7 +434,7 @@ exports.removeRegisteredCategories = function (categories, callback, scope) {
 };
 
 /**
- * Remove all registered categories (iOS only).
+ * Remove all registered categories (iOS and Android).
  *
  * @param {Function} callback
  *      The function to be exec as the callback
@@ -350,6 +445,46 @@ exports.clearRegisteredCategories = function (callback, scope) {
     this.core.clearRegisteredCategories(callback, scope);
 };
 
+/**
+ * Change the plugin settings (Android only).
+ *
+ * @param {Object} settings
+ *      The settings to change
+ * @param {Function} callback
+ *      A function to be called with the current settings
+ * @param {Object?} scope
+ *      The scope for the callback function
+ */
+exports.configure = function (settings, callback, scope) {
+    this.core.configure(settings, callback, scope);
+};
+
+/**
+ * Create a notification channel unless it exists already (Android only).
+ *
+ * @param {Object} channel
+ *      The channel settings
+ * @param {Function} callback
+ *      A function to be called after the channel has been created
+ * @param {Object?} scope
+ *      The scope for the callback function
+ */
+exports.createChannel = function (channel, callback, scope) {
+    this.core.createChannel(channel, callback, scope);
+};
+
+/**
+ * Counters like the number of registered alarms and wakeups (Android only).
+ *
+ * @param {Function} callback
+ *      A function to be called with the counters
+ * @param {Object?} scope
+ *      The scope for the callback function
+ */
+exports.getMetrics = function (callback, scope) {
+    this.core.getMetrics(callback, scope);
+};
+
 exports.showToastNotification = function (callback, errorCallback, options) {
     this.core.showToastNotification(callback, errorCallback, options);
 };